@@ -0,0 +1,134 @@
+package scheduler;
+
+import scheduler.db.ConnectionManager;
+import scheduler.util.PasswordHasher;
+import scheduler.util.Util;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * An in-memory embedded database with the scheduler's schema, seeded at a given scale.
+ *
+ * Caregivers are named cg0, cg1, ... and patients pt0, pt1, ...; every account has the
+ * password {@link #PASSWORD}. Every caregiver is available on each of the upcoming dates
+ * starting at {@link #FIRST_DATE}. Historical appointments are spread over past dates so they
+ * show up in show_appointments without taking upcoming slots.
+ */
+public class BenchmarkDatabase {
+
+    public static final String PASSWORD = "Benchm4rk!";
+    public static final String VACCINE = "pfizer";
+    public static final LocalDate FIRST_DATE = LocalDate.of(2030, 1, 1);
+
+    private static final LocalDate HISTORY_START = LocalDate.of(2020, 1, 1);
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * Points the scheduler at a fresh in-memory embedded database and seeds it. Must run before
+     * anything touches ConnectionManager.
+     */
+    public static void start(int caregivers, int dates, int patients, int appointments) throws SQLException {
+        System.setProperty("Backend", "embedded");
+        System.setProperty("EmbeddedPath", "mem:scheduler");
+
+        // the first connection creates the schema
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            seed(con, caregivers, dates, patients, appointments);
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    public static Date date(int offset) {
+        return Date.valueOf(FIRST_DATE.plusDays(offset));
+    }
+
+    private static void seed(Connection con, int caregivers, int dates, int patients, int appointments)
+            throws SQLException {
+        con.setAutoCommit(false);
+        // one hash for every account keeps seeding fast; logins still verify it for real
+        byte[] salt = Util.generateSalt();
+        byte[] hash = Util.generateHash(PASSWORD, salt);
+        String params = PasswordHasher.getInstance().getCurrentParams().toString();
+
+        try (PreparedStatement statement = con.prepareStatement(
+                "INSERT INTO Caregivers (Username, Salt, Hash, HashParams) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < caregivers; i++) {
+                statement.setString(1, "cg" + i);
+                statement.setBytes(2, salt);
+                statement.setBytes(3, hash);
+                statement.setString(4, params);
+                addToBatch(statement, i);
+            }
+            statement.executeBatch();
+        }
+        try (PreparedStatement statement = con.prepareStatement(
+                "INSERT INTO Patients (Username, Salt, Hash, HashParams) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < patients; i++) {
+                statement.setString(1, "pt" + i);
+                statement.setBytes(2, salt);
+                statement.setBytes(3, hash);
+                statement.setString(4, params);
+                addToBatch(statement, i);
+            }
+            statement.executeBatch();
+        }
+        try (PreparedStatement statement = con.prepareStatement("INSERT INTO Vaccines (Name, Doses) VALUES (?, ?)")) {
+            statement.setString(1, VACCINE);
+            statement.setInt(2, Integer.MAX_VALUE / 2);
+            statement.executeUpdate();
+        }
+
+        try (PreparedStatement statement = con.prepareStatement(
+                "INSERT INTO Availabilities (Time, Username) VALUES (?, ?)")) {
+            int n = 0;
+            for (int d = 0; d < dates; d++) {
+                Date date = date(d);
+                for (int c = 0; c < caregivers; c++) {
+                    statement.setDate(1, date);
+                    statement.setString(2, "cg" + c);
+                    addToBatch(statement, n++);
+                }
+            }
+            // past availability backing the historical appointments
+            int pastDays = (appointments + caregivers - 1) / caregivers;
+            for (int d = 0; d < pastDays; d++) {
+                Date date = Date.valueOf(HISTORY_START.plusDays(d));
+                for (int c = 0; c < caregivers; c++) {
+                    statement.setDate(1, date);
+                    statement.setString(2, "cg" + c);
+                    addToBatch(statement, n++);
+                }
+            }
+            statement.executeBatch();
+        }
+
+        try (PreparedStatement statement = con.prepareStatement(
+                "INSERT INTO Appointments (aid, Time, cname, pname, vname) VALUES (?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < appointments; i++) {
+                statement.setInt(1, i + 1);
+                statement.setDate(2, Date.valueOf(HISTORY_START.plusDays(i / caregivers)));
+                statement.setString(3, "cg" + (i % caregivers));
+                statement.setString(4, "pt" + (i % patients));
+                statement.setString(5, VACCINE);
+                addToBatch(statement, i);
+            }
+            statement.executeBatch();
+        }
+        con.commit();
+        con.setAutoCommit(true);
+    }
+
+    private static void addToBatch(PreparedStatement statement, int n) throws SQLException {
+        statement.addBatch();
+        if ((n + 1) % BATCH_SIZE == 0) {
+            statement.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package scheduler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs whole commands through Scheduler.execute() against the embedded database, the same way
+ * the console and the server do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(java.util.concurrent.TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommandBenchmark {
+
+    private static final Pattern APPOINTMENT_ID = Pattern.compile("Appointment ID: (\\d+)");
+
+    @Param("100")
+    public int caregivers;
+
+    @Param("30")
+    public int dates;
+
+    @Param("1000")
+    public int patients;
+
+    @Param("10000")
+    public int appointments;
+
+    private final AtomicInteger nextPatient = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void startDatabase() throws Exception {
+        BenchmarkDatabase.start(caregivers, dates, patients, appointments);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        Scheduler.shutdown();
+    }
+
+    /**
+     * A session logged in as its own patient, one per benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class PatientSession {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private Scheduler scheduler;
+        private String username;
+
+        @Setup(Level.Trial)
+        public void login(CommandBenchmark benchmark) {
+            username = "pt" + (benchmark.nextPatient.getAndIncrement() % benchmark.patients);
+            scheduler = new Scheduler(new PrintStream(buffer, false, StandardCharsets.UTF_8));
+            scheduler.execute("login_patient " + username + " " + BenchmarkDatabase.PASSWORD);
+            buffer.reset();
+        }
+
+        String run(String command) {
+            buffer.reset();
+            scheduler.execute(command);
+            return buffer.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static PrintStream discard() {
+        return new PrintStream(OutputStream.nullOutputStream());
+    }
+
+    private String randomDate() {
+        return BenchmarkDatabase.date(ThreadLocalRandom.current().nextInt(dates)).toString();
+    }
+
+    @Benchmark
+    public boolean loginPatient() {
+        String username = "pt" + ThreadLocalRandom.current().nextInt(patients);
+        return new Scheduler(discard()).execute("login_patient " + username + " " + BenchmarkDatabase.PASSWORD);
+    }
+
+    @Benchmark
+    public String searchCaregiverSchedule(PatientSession session) {
+        return session.run("search_caregiver_schedule " + randomDate());
+    }
+
+    @Benchmark
+    public String showAppointments(PatientSession session) {
+        return session.run("show_appointments");
+    }
+
+    /**
+     * One booking followed by its cancellation, so the schedule does not fill up while measuring.
+     */
+    @Benchmark
+    public String reserveAndCancel(PatientSession session) {
+        String reserved = session.run("reserve " + randomDate() + " " + BenchmarkDatabase.VACCINE);
+        Matcher m = APPOINTMENT_ID.matcher(reserved);
+        if (!m.find()) {
+            throw new IllegalStateException("Reservation failed: " + reserved);
+        }
+        return session.run("cancel " + m.group(1));
+    }
+}
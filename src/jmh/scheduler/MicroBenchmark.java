@@ -0,0 +1,97 @@
+package scheduler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import scheduler.util.Util;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory building blocks of the commands; none of these touch the database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MicroBenchmark {
+
+    // caregivers available on a date; every fourth one is already booked
+    @Param({"100", "1000"})
+    public int available;
+
+    private final Scheduler scheduler = new Scheduler(new PrintStream(OutputStream.nullOutputStream()));
+    private byte[] salt;
+
+    private List<String> availableNames;
+    private List<String> reservedNames;
+    private BitSet availableBits;
+    private BitSet reservedBits;
+
+    @Setup
+    public void setUp() {
+        salt = Util.generateSalt();
+        availableNames = new ArrayList<>();
+        reservedNames = new ArrayList<>();
+        availableBits = new BitSet();
+        reservedBits = new BitSet();
+        for (int i = 0; i < available; i++) {
+            availableNames.add("cg" + i);
+            availableBits.set(i);
+            if (i % 4 == 0) {
+                reservedNames.add("cg" + i);
+                reservedBits.set(i);
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] generateHash() {
+        return Util.generateHash(BenchmarkDatabase.PASSWORD, salt);
+    }
+
+    @Benchmark
+    public boolean isPasswordValid() {
+        return scheduler.isPasswordValid(BenchmarkDatabase.PASSWORD);
+    }
+
+    // what search_caregiver_schedule used to do with the two query results
+    @Benchmark
+    public List<String> freeCaregiversListRemoveAll() {
+        List<String> free = new ArrayList<>(availableNames);
+        free.removeAll(reservedNames);
+        return free;
+    }
+
+    @Benchmark
+    public Set<String> freeCaregiversHashSet() {
+        Set<String> free = new HashSet<>(availableNames);
+        free.removeAll(new HashSet<>(reservedNames));
+        return free;
+    }
+
+    // what the schedule index keeps per date
+    @Benchmark
+    public BitSet freeCaregiversBitSet() {
+        BitSet free = (BitSet) availableBits.clone();
+        free.andNot(reservedBits);
+        return free;
+    }
+}
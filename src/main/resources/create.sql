@@ -2,6 +2,7 @@ CREATE TABLE Caregivers (
     Username varchar(255),
     Salt BINARY(16),
     Hash BINARY(16),
+    HashParams varchar(64),
     PRIMARY KEY (Username)
 );
 
@@ -21,6 +22,7 @@ CREATE TABLE Patients (
     Username varchar(255),
     Salt BINARY(16),
     Hash BINARY(16),
+    HashParams varchar(64),
     PRIMARY KEY (Username)
 );
 
@@ -33,3 +35,9 @@ CREATE TABLE Appointments (
     vname varchar(255) REFERENCES Vaccines(Name),
     FOREIGN KEY (Time, cname) REFERENCES Availabilities (Time, Username)
 );
+
+CREATE TABLE Sequences (
+    Name varchar(255),
+    NextValue int,
+    PRIMARY KEY (Name)
+);
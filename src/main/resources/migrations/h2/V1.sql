@@ -0,0 +1,8 @@
+-- Bring databases created before the migration runner up to date
+CREATE TABLE IF NOT EXISTS Sequences (
+    Name varchar(255),
+    NextValue int,
+    PRIMARY KEY (Name)
+);
+ALTER TABLE Caregivers ADD COLUMN IF NOT EXISTS HashParams varchar(64);
+ALTER TABLE Patients ADD COLUMN IF NOT EXISTS HashParams varchar(64);
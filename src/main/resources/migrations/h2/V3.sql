@@ -0,0 +1,3 @@
+-- A caregiver takes at most one appointment per date, and stock never goes negative
+ALTER TABLE Appointments ADD CONSTRAINT UQ_Appointments_Time_cname UNIQUE (Time, cname);
+ALTER TABLE Vaccines ADD CONSTRAINT CK_Vaccines_Doses CHECK (Doses >= 0);
@@ -0,0 +1,2 @@
+-- Vaccines rows carry a version so caches can tell when stock changed
+ALTER TABLE Vaccines ADD COLUMN Version bigint NOT NULL DEFAULT 0;
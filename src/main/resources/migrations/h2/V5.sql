@@ -0,0 +1,19 @@
+-- Availability is a shift and appointments start at a minute, so a caregiver can take several appointments a day
+ALTER TABLE Availabilities ADD COLUMN StartMinute int NOT NULL DEFAULT 0;
+ALTER TABLE Availabilities ADD COLUMN EndMinute int NOT NULL DEFAULT 1440;
+-- H2 keeps the old unique index alive under the (Time, cname) foreign key, so rebuild the table
+CREATE TABLE Appointments_V5 (
+    aid int PRIMARY KEY,
+    Time date,
+    SlotStart int NOT NULL DEFAULT 0,
+    cname varchar(255),
+    pname varchar(255) REFERENCES Patients(Username),
+    vname varchar(255) REFERENCES Vaccines(Name),
+    CONSTRAINT FK_Appointments_Availabilities FOREIGN KEY (Time, cname) REFERENCES Availabilities (Time, Username),
+    CONSTRAINT UQ_Appointments_Time_cname_SlotStart UNIQUE (Time, cname, SlotStart)
+);
+INSERT INTO Appointments_V5 (aid, Time, cname, pname, vname) SELECT aid, Time, cname, pname, vname FROM Appointments;
+DROP TABLE Appointments;
+ALTER TABLE Appointments_V5 RENAME TO Appointments;
+CREATE INDEX IX_Appointments_cname_Time ON Appointments (cname, Time, aid, vname, pname);
+CREATE INDEX IX_Appointments_pname_Time ON Appointments (pname, Time, aid, vname, cname);
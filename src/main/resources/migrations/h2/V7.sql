@@ -0,0 +1,5 @@
+-- show_appointments pages by (Time, SlotStart, aid), so the covering indexes carry SlotStart
+DROP INDEX IX_Appointments_cname_Time;
+DROP INDEX IX_Appointments_pname_Time;
+CREATE INDEX IX_Appointments_cname_Time ON Appointments (cname, Time, SlotStart, aid, vname, pname);
+CREATE INDEX IX_Appointments_pname_Time ON Appointments (pname, Time, SlotStart, aid, vname, cname);
@@ -0,0 +1,5 @@
+-- A caregiver can upload several shifts on one date, so availabilities are keyed by their start
+ALTER TABLE Appointments DROP CONSTRAINT FK_Appointments_Availabilities;
+ALTER TABLE Availabilities DROP PRIMARY KEY;
+ALTER TABLE Availabilities ADD CONSTRAINT PK_Availabilities PRIMARY KEY (Time, Username, StartMinute);
+ALTER TABLE Appointments ADD CONSTRAINT FK_Appointments_Caregivers FOREIGN KEY (cname) REFERENCES Caregivers (Username);
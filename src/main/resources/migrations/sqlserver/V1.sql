@@ -0,0 +1,11 @@
+-- Bring databases created before the migration runner up to date
+IF OBJECT_ID('Sequences') IS NULL
+    CREATE TABLE Sequences (
+        Name varchar(255),
+        NextValue int,
+        PRIMARY KEY (Name)
+    );
+IF COL_LENGTH('Caregivers', 'HashParams') IS NULL
+    ALTER TABLE Caregivers ADD HashParams varchar(64);
+IF COL_LENGTH('Patients', 'HashParams') IS NULL
+    ALTER TABLE Patients ADD HashParams varchar(64);
@@ -0,0 +1,4 @@
+-- Covering indexes for show_appointments and caregiver-centric availability lookups
+CREATE INDEX IX_Appointments_cname_Time ON Appointments (cname, Time) INCLUDE (aid, vname, pname);
+CREATE INDEX IX_Appointments_pname_Time ON Appointments (pname, Time) INCLUDE (aid, vname, cname);
+CREATE INDEX IX_Availabilities_Username_Time ON Availabilities (Username, Time);
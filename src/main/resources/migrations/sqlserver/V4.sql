@@ -0,0 +1,2 @@
+-- Vaccines rows carry a version so caches can tell when stock changed
+ALTER TABLE Vaccines ADD Version bigint NOT NULL CONSTRAINT DF_Vaccines_Version DEFAULT 0;
@@ -0,0 +1,6 @@
+-- Availability is a shift and appointments start at a minute, so a caregiver can take several appointments a day
+ALTER TABLE Availabilities ADD StartMinute int NOT NULL CONSTRAINT DF_Availabilities_StartMinute DEFAULT 0;
+ALTER TABLE Availabilities ADD EndMinute int NOT NULL CONSTRAINT DF_Availabilities_EndMinute DEFAULT 1440;
+ALTER TABLE Appointments ADD SlotStart int NOT NULL CONSTRAINT DF_Appointments_SlotStart DEFAULT 0;
+ALTER TABLE Appointments DROP CONSTRAINT UQ_Appointments_Time_cname;
+ALTER TABLE Appointments ADD CONSTRAINT UQ_Appointments_Time_cname_SlotStart UNIQUE (Time, cname, SlotStart);
@@ -0,0 +1,12 @@
+-- Patients can wait for a spot on a date range, served by priority and then in the order they joined
+CREATE TABLE Waitlist (
+    wid int PRIMARY KEY,
+    pname varchar(255) NOT NULL REFERENCES Patients(Username),
+    vname varchar(255) NOT NULL REFERENCES Vaccines(Name),
+    FromDate date NOT NULL,
+    ToDate date NOT NULL,
+    Priority int NOT NULL CONSTRAINT DF_Waitlist_Priority DEFAULT 0,
+    QueuedAt datetime2 NOT NULL,
+    CONSTRAINT UQ_Waitlist_pname_vname UNIQUE (pname, vname)
+);
+CREATE INDEX IX_Waitlist_vname_ToDate ON Waitlist (vname, ToDate);
@@ -0,0 +1,11 @@
+-- A caregiver can upload several shifts on one date, so availabilities are keyed by their start
+DECLARE @dropForeignKey nvarchar(max) = (SELECT 'ALTER TABLE Appointments DROP CONSTRAINT ' + QUOTENAME(name)
+        FROM sys.foreign_keys
+        WHERE parent_object_id = OBJECT_ID('Appointments') AND referenced_object_id = OBJECT_ID('Availabilities'))
+    EXEC (@dropForeignKey);
+DECLARE @dropPrimaryKey nvarchar(max) = (SELECT 'ALTER TABLE Availabilities DROP CONSTRAINT ' + QUOTENAME(name)
+        FROM sys.key_constraints
+        WHERE parent_object_id = OBJECT_ID('Availabilities') AND type = 'PK')
+    EXEC (@dropPrimaryKey);
+ALTER TABLE Availabilities ADD CONSTRAINT PK_Availabilities PRIMARY KEY (Time, Username, StartMinute);
+ALTER TABLE Appointments ADD CONSTRAINT FK_Appointments_Caregivers FOREIGN KEY (cname) REFERENCES Caregivers (Username);
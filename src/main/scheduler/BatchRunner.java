@@ -0,0 +1,143 @@
+package scheduler;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Runs a script of scheduler commands without the interactive prompt:
+ *
+ *   java scheduler.Scheduler --batch &lt;file | -&gt;
+ *
+ * Lines are read ahead and consecutive add_doses, upload_availability and cancel commands are
+ * handed to the session as one group, so their database work is batched. Everything else runs
+ * line by line. Blank lines and lines starting with # are ignored. A failing command does not
+ * stop the script; the run ends with per-command counts, failures and the elapsed time.
+ */
+public class BatchRunner {
+
+    // commands whose consecutive runs Scheduler.executeGroup batches
+    private static final Set<String> BATCHED = Set.of("add_doses", "upload_availability", "cancel");
+    // longest run handed over at once, which bounds how far ahead we read
+    private static final int MAX_GROUP = 1000;
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    private final PrintStream out;
+    private final Scheduler scheduler;
+    // operation -> {commands run, commands failed}
+    private final Map<String, int[]> counts = new TreeMap<>();
+
+    public BatchRunner(PrintStream out) {
+        this.out = out;
+        this.scheduler = new Scheduler(out);
+    }
+
+    /**
+     * Runs the script at path, or standard input for "-".
+     */
+    public static void runScript(String path) {
+        PrintStream out = new PrintStream(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), OUTPUT_BUFFER_SIZE), false);
+        try (BufferedReader reader = path.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in))
+                : Files.newBufferedReader(Paths.get(path))) {
+            new BatchRunner(out).run(reader);
+        } catch (IOException e) {
+            out.println("Could not read " + path);
+            e.printStackTrace();
+        } finally {
+            out.flush();
+        }
+    }
+
+    public void run(BufferedReader reader) throws IOException {
+        long start = System.nanoTime();
+        List<String[]> group = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] tokens = line.split(" ");
+            String operation = tokens[0];
+            if (!group.isEmpty() && (!group.get(0)[0].equals(operation) || group.size() == MAX_GROUP)) {
+                runGroup(group);
+                group.clear();
+            }
+            if (BATCHED.contains(operation)) {
+                group.add(tokens);
+                continue;
+            }
+            if (!runOne(line, operation)) {
+                break;
+            }
+        }
+        if (!group.isEmpty()) {
+            runGroup(group);
+        }
+        printSummary(System.nanoTime() - start);
+    }
+
+    private void runGroup(List<String[]> group) {
+        String operation = group.get(0)[0];
+        int failures;
+        try {
+            failures = scheduler.executeGroup(operation, group);
+        } catch (RuntimeException e) {
+            out.println("Error occurred when running " + group.size() + " " + operation + " commands");
+            e.printStackTrace();
+            failures = group.size();
+        }
+        count(operation, group.size(), failures);
+    }
+
+    // returns false once the script has quit
+    private boolean runOne(String line, String operation) {
+        boolean more = true;
+        boolean failed;
+        try {
+            more = scheduler.execute(line);
+            failed = scheduler.lastCommandFailed();
+        } catch (RuntimeException e) {
+            out.println("Error occurred when running " + operation);
+            e.printStackTrace();
+            failed = true;
+        }
+        count(operation, 1, failed ? 1 : 0);
+        return more;
+    }
+
+    private void count(String operation, int run, int failed) {
+        int[] c = counts.computeIfAbsent(operation, k -> new int[2]);
+        c[0] += run;
+        c[1] += failed;
+    }
+
+    private void printSummary(long elapsedNanos) {
+        int total = 0;
+        int failed = 0;
+        for (int[] c : counts.values()) {
+            total += c[0];
+            failed += c[1];
+        }
+        long elapsedMs = elapsedNanos / 1_000_000;
+        out.println();
+        out.println("*** Batch finished: " + total + " commands, " + failed + " failed, " + elapsedMs + " ms"
+                + (elapsedMs > 0 ? " (" + (total * 1000L / elapsedMs) + " commands/s)" : "") + " ***");
+        for (Map.Entry<String, int[]> e : counts.entrySet()) {
+            out.println(e.getKey() + ": " + e.getValue()[0] + " run, " + e.getValue()[1] + " failed");
+        }
+    }
+}
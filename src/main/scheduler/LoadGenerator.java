@@ -0,0 +1,484 @@
+package scheduler;
+
+import scheduler.db.ConnectionManager;
+import scheduler.inventory.DoseLedger;
+import scheduler.util.PasswordHasher;
+import scheduler.util.Util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Drives concurrent reserve, cancel, add_doses and search_caregiver_schedule traffic through
+ * Scheduler sessions, then checks that the data is still consistent.
+ *
+ *   java scheduler.LoadGenerator [patients=1000] [caregivers=100] [dates=30] [doses=100000]
+ *                                [threads=16] [duration=30] [mix=reserve:50,cancel:20,add_doses:10,search:20]
+ *
+ * Every run seeds its own accounts and vaccine under a fresh prefix, so it can be pointed at a
+ * shared database. Without a Backend setting it uses an in-memory embedded database. Each
+ * worker thread is one patient session plus one caregiver session; duration is in seconds.
+ * The run prints throughput and p50/p95/p99 latency per command, and exits with status 1 if
+ * an invariant is broken:
+ *   - no caregiver has two appointments on one date,
+ *   - no vaccine's Doses ever goes negative (sampled during the run as well),
+ *   - every appointment is backed by the caregiver's availability,
+ *   - the vaccine's doses equal seeded + added - booked, and the bookings match the commands.
+ */
+public class LoadGenerator {
+
+    private static final String PASSWORD = "L0adTest!";
+    private static final Pattern APPOINTMENT_ID = Pattern.compile("Appointment ID: (\\d+)");
+    private static final String[] OPERATIONS = {"reserve", "cancel", "add_doses", "search"};
+    private static final int RESERVE = 0;
+    private static final int CANCEL = 1;
+    private static final int ADD_DOSES = 2;
+    private static final int BATCH_SIZE = 1000;
+    private static final long NEGATIVE_DOSES_SAMPLE_MS = 500;
+
+    private final int patients;
+    private final int caregivers;
+    private final int dates;
+    private final int doses;
+    private final int threads;
+    private final int durationSeconds;
+    // cumulative weights of the operations, in OPERATIONS order
+    private final int[] mix;
+
+    private final String prefix = "lg" + Long.toString(System.currentTimeMillis(), 36);
+    private final String vaccine = prefix + "_vac";
+    private final LocalDate firstDate = LocalDate.now().plusDays(1);
+
+    // what the commands report having done, checked against the database at the end
+    private final AtomicInteger booked = new AtomicInteger();
+    private final AtomicInteger cancelled = new AtomicInteger();
+    private final AtomicLong dosesAdded = new AtomicLong();
+    private final AtomicInteger negativeDoseSamples = new AtomicInteger();
+
+    public LoadGenerator(Map<String, String> options) {
+        this.patients = intOption(options, "patients", 1000);
+        this.caregivers = intOption(options, "caregivers", 100);
+        this.dates = intOption(options, "dates", 30);
+        this.doses = intOption(options, "doses", 100000);
+        this.threads = intOption(options, "threads", 16);
+        this.durationSeconds = intOption(options, "duration", 30);
+        this.mix = parseMix(options.getOrDefault("mix", "reserve:50,cancel:20,add_doses:10,search:20"));
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                System.out.println("Usage: LoadGenerator [patients=N] [caregivers=M] [dates=D] [doses=N]"
+                        + " [threads=T] [duration=seconds] [mix=reserve:50,cancel:20,add_doses:10,search:20]");
+                return;
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        if (System.getProperty("Backend") == null && System.getenv("Backend") == null) {
+            System.setProperty("Backend", "embedded");
+            System.setProperty("EmbeddedPath", "mem:load");
+        }
+
+        boolean consistent = false;
+        try {
+            consistent = new LoadGenerator(options).run();
+        } catch (SQLException | InterruptedException e) {
+            System.out.println("Error occurred when running the load");
+            e.printStackTrace();
+        } finally {
+            Scheduler.shutdown();
+        }
+        System.exit(consistent ? 0 : 1);
+    }
+
+    /**
+     * Seeds, runs the load, prints the report and returns whether every invariant held.
+     */
+    public boolean run() throws SQLException, InterruptedException {
+        System.out.println("Seeding " + patients + " patients, " + caregivers + " caregivers, "
+                + dates + " dates and " + doses + " doses of " + vaccine);
+        seed();
+
+        Worker[] workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(i);
+        }
+        System.out.println("Running " + threads + " threads for " + durationSeconds + " s");
+
+        CountDownLatch started = new CountDownLatch(1);
+        long deadline = System.nanoTime() + durationSeconds * 1_000_000_000L;
+        Thread[] running = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            Worker worker = workers[i];
+            running[i] = new Thread(() -> worker.run(started, deadline), "load-" + i);
+            running[i].start();
+        }
+        Thread sampler = new Thread(() -> sampleNegativeDoses(deadline), "load-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+
+        long start = System.nanoTime();
+        started.countDown();
+        for (Thread t : running) {
+            t.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        sampler.join();
+
+        report(workers, elapsed);
+        return checkInvariants();
+    }
+
+    private void seed() throws SQLException {
+        // one hash for every account keeps seeding fast; logins still verify it for real
+        byte[] salt = Util.generateSalt();
+        byte[] hash = Util.generateHash(PASSWORD, salt);
+        String params = PasswordHasher.getInstance().getCurrentParams().toString();
+
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            con.setAutoCommit(false);
+            insertAccounts(con, "Caregivers", prefix + "_cg", caregivers, salt, hash, params);
+            insertAccounts(con, "Patients", prefix + "_pt", patients, salt, hash, params);
+            try (PreparedStatement statement = con.prepareStatement("INSERT INTO Vaccines (Name, Doses) VALUES (?, ?)")) {
+                statement.setString(1, vaccine);
+                statement.setInt(2, doses);
+                statement.executeUpdate();
+            }
+            try (PreparedStatement statement = con.prepareStatement(
+                    "INSERT INTO Availabilities (Time, Username) VALUES (?, ?)")) {
+                int n = 0;
+                for (int d = 0; d < dates; d++) {
+                    for (int c = 0; c < caregivers; c++) {
+                        statement.setDate(1, date(d));
+                        statement.setString(2, caregiverName(c));
+                        addToBatch(statement, n++);
+                    }
+                }
+                statement.executeBatch();
+            }
+            con.commit();
+        } catch (SQLException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            con.setAutoCommit(true);
+            cm.closeConnection();
+        }
+    }
+
+    private void insertAccounts(Connection con, String table, String namePrefix, int count,
+                                byte[] salt, byte[] hash, String params) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(
+                "INSERT INTO " + table + " (Username, Salt, Hash, HashParams) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < count; i++) {
+                statement.setString(1, namePrefix + i);
+                statement.setBytes(2, salt);
+                statement.setBytes(3, hash);
+                statement.setString(4, params);
+                addToBatch(statement, i);
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private static void addToBatch(PreparedStatement statement, int n) throws SQLException {
+        statement.addBatch();
+        if ((n + 1) % BATCH_SIZE == 0) {
+            statement.executeBatch();
+        }
+    }
+
+    private String patientName(int i) {
+        return prefix + "_pt" + i;
+    }
+
+    private String caregiverName(int i) {
+        return prefix + "_cg" + i;
+    }
+
+    private Date date(int offset) {
+        return Date.valueOf(firstDate.plusDays(offset));
+    }
+
+    /**
+     * One thread of load: a patient session that reserves, cancels its own bookings and
+     * searches, and a caregiver session that adds doses.
+     */
+    private class Worker {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final Scheduler patient;
+        private final Scheduler caregiver;
+        private final Latencies[] latencies = new Latencies[OPERATIONS.length];
+        private final int[] failures = new int[OPERATIONS.length];
+        // appointments this worker has booked and not yet cancelled
+        private final List<Integer> appointments = new ArrayList<>();
+
+        Worker(int i) {
+            PrintStream out = new PrintStream(buffer, false, StandardCharsets.UTF_8);
+            patient = new Scheduler(out);
+            caregiver = new Scheduler(out);
+            patient.execute("login_patient " + patientName(i % patients) + " " + PASSWORD);
+            caregiver.execute("login_caregiver " + caregiverName(i % caregivers) + " " + PASSWORD);
+            if (patient.lastCommandFailed() || caregiver.lastCommandFailed()) {
+                throw new IllegalStateException("Could not log in: " + buffer.toString(StandardCharsets.UTF_8));
+            }
+            buffer.reset();
+            for (int op = 0; op < OPERATIONS.length; op++) {
+                latencies[op] = new Latencies();
+            }
+        }
+
+        void run(CountDownLatch started, long deadline) {
+            try {
+                started.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (System.nanoTime() < deadline) {
+                int op = pick(random.nextInt(mix[mix.length - 1]));
+                if (op == CANCEL && appointments.isEmpty()) {
+                    op = RESERVE;
+                }
+                String command;
+                Scheduler session = patient;
+                int amount = 0;
+                int aid = 0;
+                switch (op) {
+                    case RESERVE:
+                        command = "reserve " + date(random.nextInt(dates)) + " " + vaccine;
+                        break;
+                    case CANCEL:
+                        aid = appointments.remove(random.nextInt(appointments.size()));
+                        command = "cancel " + aid;
+                        break;
+                    case ADD_DOSES:
+                        amount = 1 + random.nextInt(10);
+                        command = "add_doses " + vaccine + " " + amount;
+                        session = caregiver;
+                        break;
+                    default:
+                        command = "search_caregiver_schedule " + date(random.nextInt(dates));
+                        break;
+                }
+
+                buffer.reset();
+                boolean failed;
+                long start = System.nanoTime();
+                try {
+                    session.execute(command);
+                    failed = session.lastCommandFailed();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    failed = true;
+                }
+                latencies[op].add(System.nanoTime() - start);
+
+                if (failed) {
+                    failures[op]++;
+                    if (op == CANCEL) {
+                        // it may or may not be gone; stop counting on it either way
+                        System.out.println("cancel " + aid + " failed: " + buffer.toString(StandardCharsets.UTF_8).trim());
+                    }
+                } else if (op == RESERVE) {
+                    Matcher m = APPOINTMENT_ID.matcher(buffer.toString(StandardCharsets.UTF_8));
+                    if (m.find()) {
+                        appointments.add(Integer.parseInt(m.group(1)));
+                        booked.incrementAndGet();
+                    }
+                } else if (op == CANCEL) {
+                    cancelled.incrementAndGet();
+                } else if (op == ADD_DOSES) {
+                    dosesAdded.addAndGet(amount);
+                }
+            }
+        }
+    }
+
+    private int pick(int r) {
+        int op = 0;
+        while (r >= mix[op]) {
+            op++;
+        }
+        return op;
+    }
+
+    /**
+     * Nanosecond samples for one operation on one worker, kept in a growing array so
+     * recording does not allocate per command.
+     */
+    private static class Latencies {
+        private long[] samples = new long[1024];
+        private int size = 0;
+
+        void add(long nanos) {
+            if (size == samples.length) {
+                samples = Arrays.copyOf(samples, size * 2);
+            }
+            samples[size++] = nanos;
+        }
+    }
+
+    private void report(Worker[] workers, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        int total = 0;
+        System.out.println();
+        System.out.println(String.format("%-10s %9s %8s %10s %9s %9s %9s",
+                "command", "count", "failed", "ops/s", "p50 ms", "p95 ms", "p99 ms"));
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            int count = 0;
+            int failed = 0;
+            for (Worker w : workers) {
+                count += w.latencies[op].size;
+                failed += w.failures[op];
+            }
+            long[] all = new long[count];
+            int n = 0;
+            for (Worker w : workers) {
+                System.arraycopy(w.latencies[op].samples, 0, all, n, w.latencies[op].size);
+                n += w.latencies[op].size;
+            }
+            Arrays.sort(all);
+            total += count;
+            System.out.println(String.format("%-10s %9d %8d %10.1f %9.2f %9.2f %9.2f",
+                    OPERATIONS[op], count, failed, count / seconds,
+                    percentile(all, 0.50), percentile(all, 0.95), percentile(all, 0.99)));
+        }
+        System.out.println(String.format("%-10s %9d %8s %10.1f", "total", total, "", total / seconds));
+        System.out.println("Booked " + booked.get() + ", cancelled " + cancelled.get()
+                + ", doses added " + dosesAdded.get());
+    }
+
+    // in milliseconds, from sorted nanosecond samples
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int i = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, i)] / 1e6;
+    }
+
+    private void sampleNegativeDoses(long deadline) {
+        while (System.nanoTime() < deadline) {
+            ConnectionManager cm = new ConnectionManager();
+            try (PreparedStatement statement = cm.createConnection().prepareStatement("SELECT COUNT(*) FROM Vaccines WHERE Doses < 0");
+                 ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                if (resultSet.getInt(1) > 0) {
+                    negativeDoseSamples.incrementAndGet();
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            } finally {
+                cm.closeConnection();
+            }
+            try {
+                Thread.sleep(NEGATIVE_DOSES_SAMPLE_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private boolean checkInvariants() throws SQLException {
+        // doses leased by this process must reach the table before it can be compared
+        DoseLedger.getInstance().flush();
+
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            System.out.println();
+            boolean ok = true;
+            ok &= check("no caregiver booked twice in a slot", 0, count(con,
+                    "SELECT COUNT(*) FROM (SELECT Time, cname, SlotStart FROM Appointments GROUP BY Time, cname, SlotStart "
+                            + "HAVING COUNT(*) > 1) t"));
+            ok &= check("no negative doses at the end", 0, count(con, "SELECT COUNT(*) FROM Vaccines WHERE Doses < 0"));
+            ok &= check("no negative doses while running", 0, negativeDoseSamples.get());
+            ok &= check("every appointment backed by availability", 0, count(con,
+                    "SELECT COUNT(*) FROM Appointments p WHERE NOT EXISTS (SELECT 1 FROM Availabilities a "
+                            + "WHERE a.Time = p.Time AND a.Username = p.cname "
+                            + "AND p.SlotStart >= a.StartMinute AND p.SlotStart < a.EndMinute)"));
+
+            int appointments = count(con, "SELECT COUNT(*) FROM Appointments WHERE vname = ?", vaccine);
+            ok &= check("appointments match bookings minus cancellations",
+                    booked.get() - cancelled.get(), appointments);
+            ok &= check("doses equal seeded + added - booked",
+                    doses + dosesAdded.get() - appointments, count(con, "SELECT Doses FROM Vaccines WHERE Name = ?", vaccine));
+            System.out.println(ok ? "All invariants hold" : "*** INVARIANTS VIOLATED ***");
+            return ok;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    private static boolean check(String name, long expected, long actual) {
+        boolean ok = expected == actual;
+        System.out.println((ok ? "[ok]   " : "[FAIL] ") + name + (ok ? "" : ": expected " + expected + ", got " + actual));
+        return ok;
+    }
+
+    private static int count(Connection con, String sql, String... params) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                statement.setString(i + 1, params[i]);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+        }
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        int n = value == null ? defaultValue : Integer.parseInt(value);
+        if (n <= 0) {
+            throw new IllegalArgumentException(name + " must be positive");
+        }
+        return n;
+    }
+
+    // "reserve:50,cancel:20,..." as cumulative weights in OPERATIONS order
+    private static int[] parseMix(String spec) {
+        int[] weights = new int[OPERATIONS.length];
+        for (String part : spec.split(",")) {
+            String[] kv = part.split(":");
+            int op = Arrays.asList(OPERATIONS).indexOf(kv[0]);
+            if (kv.length != 2 || op < 0) {
+                throw new IllegalArgumentException("Invalid mix entry: " + part);
+            }
+            weights[op] = Integer.parseInt(kv[1]);
+        }
+        int[] cumulative = new int[weights.length];
+        int sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            cumulative[i] = sum;
+        }
+        if (sum <= 0) {
+            throw new IllegalArgumentException("The mix needs at least one positive weight");
+        }
+        return cumulative;
+    }
+}
@@ -1,47 +1,103 @@
 package scheduler;
 
+import scheduler.account.AccountImporter;
+import scheduler.account.PasswordRules;
+import scheduler.account.UsernameFilter;
+import scheduler.db.AsyncExecutor;
 import scheduler.db.ConnectionManager;
+import scheduler.db.ConnectionPool;
+import scheduler.export.ExportWriter;
+import scheduler.inventory.DoseLedger;
+import scheduler.inventory.VaccineCache;
+import scheduler.metrics.CommandStats;
+import scheduler.metrics.Metrics;
+import scheduler.model.Appointment;
+import scheduler.model.Availability;
+import scheduler.model.AppointmentFilter;
 import scheduler.model.Caregiver;
+import scheduler.model.ExportFilter;
 import scheduler.model.Patient;
 import scheduler.model.Vaccine;
+import scheduler.model.WaitlistEntry;
+import scheduler.repository.AppointmentRepository;
+import scheduler.repository.ExportRepository;
+import scheduler.repository.VaccineRepository;
+import scheduler.reservation.Reservation;
+import scheduler.reservation.ReservationEngine;
+import scheduler.reservation.Waitlist;
+import scheduler.schedule.ScheduleIndex;
+import scheduler.schedule.Slots;
+import scheduler.util.DateSpec;
+import scheduler.util.TimeSpec;
 import scheduler.util.Util;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Date;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 public class Scheduler {
 
     // objects to keep track of the currently logged-in user
     // Note: it is always true that at most one of currentCaregiver and currentPatient is not null
-    //       since only one user can be logged-in at a time
-    private static Caregiver currentCaregiver = null;
-    private static Patient currentPatient = null;
+    //       since only one user can be logged-in at a time in a session
+    private Caregiver currentCaregiver = null;
+    private Patient currentPatient = null;
+
+    // where this session's responses go: the console, or a client socket in server mode
+    private final PrintStream out;
+
+    // set by fail() when the current command is rejected or runs into an error
+    private boolean failed = false;
+
+    // where "show_appointments next" continues from, or null when there is nothing more to show
+    private AppointmentFilter nextAppointmentPage = null;
+
+    private static final ReservationEngine reservationEngine = new ReservationEngine();
+    private static final Waitlist waitlist = new Waitlist();
+    // open dates listed by a range search without a limit
+    private static final int DEFAULT_OPEN_DATES = 10;
+
+    // the commands timed under their own name; anything else is counted as "unknown"
+    private static final Set<String> COMMANDS = Set.of("create_patient", "create_caregiver", "login_patient",
+            "login_caregiver", "search_caregiver_schedule", "reserve", "upload_availability",
+            "bulk_upload_availability", "import_accounts", "cancel", "add_doses", "show_appointments", "export",
+            "waitlist", "logout", "pool_stats", "stats", "username_filter", "quit");
+    // the commands executeGroup() batches
+    private static final Set<String> BATCHED_COMMANDS = Set.of("add_doses", "upload_availability", "cancel");
+
+    private static final VaccineRepository vaccines = new VaccineRepository();
+    private static final AppointmentRepository appointments = new AppointmentRepository();
+    private static final ExportRepository exports = new ExportRepository();
+
+    public Scheduler(PrintStream out) {
+        this.out = out;
+    }
 
     public static void main(String[] args) {
-        // printing greetings text
-        System.out.println();
-        System.out.println("Welcome to the COVID-19 Vaccine Reservation Scheduling Application!");
-        System.out.println("*** Please enter one of the following commands ***");
-        System.out.println("> create_patient <username> <password>");  //TODO: implement create_patient (Part 1)
-        System.out.println("> create_caregiver <username> <password>");
-        System.out.println("> login_patient <username> <password>");  // TODO: implement login_patient (Part 1)
-        System.out.println("> login_caregiver <username> <password>");
-        System.out.println("> search_caregiver_schedule <date>");  // TODO: implement search_caregiver_schedule (Part 2)
-        System.out.println("> reserve <date> <vaccine>");  // TODO: implement reserve (Part 2)
-        System.out.println("> upload_availability <date>");
-        System.out.println("> cancel <appointment_id>");  // TODO: implement cancel (extra credit)
-        System.out.println("> add_doses <vaccine> <number>");
-        System.out.println("> show_appointments");  // ouTODO: implement show_appointments (Part 2)
-        System.out.println("> logout");  // TODO: implement logout (Part 2)
-        System.out.println("> quit");
-        System.out.println();
+        // account creation checks names against these instead of querying every time
+        UsernameFilter.preload();
+        if (args.length == 2 && args[0].equals("--batch")) {
+            // run a command script: a file, or - for standard input
+            BatchRunner.runScript(args[1]);
+            shutdown();
+            return;
+        }
+
+        Scheduler scheduler = new Scheduler(System.out);
+        scheduler.printWelcome();
 
         // read input from user
         BufferedReader r = new BufferedReader(new InputStreamReader(System.in));
@@ -52,60 +108,197 @@ public class Scheduler {
                 response = r.readLine();
             } catch (IOException e) {
                 System.out.println("Please try again!");
-            }
-            // split the user input by spaces
-            String[] tokens = response.split(" ");
-            // check if input exists
-            if (tokens.length == 0) {
-                System.out.println("Please try again!");
                 continue;
             }
-            // determine which operation to perform
-            String operation = tokens[0];
-            if (operation.equals("create_patient")) {
-                createPatient(tokens);
-            } else if (operation.equals("create_caregiver")) {
-                createCaregiver(tokens);
-            } else if (operation.equals("login_patient")) {
-                loginPatient(tokens);
-            } else if (operation.equals("login_caregiver")) {
-                loginCaregiver(tokens);
-            } else if (operation.equals("search_caregiver_schedule")) {
-                searchCaregiverSchedule(tokens);
-            } else if (operation.equals("reserve")) {
-                reserve(tokens);
-            } else if (operation.equals("upload_availability")) {
-                uploadAvailability(tokens);
-            } else if (operation.equals("cancel")) {
-                cancel(tokens);
-            } else if (operation.equals("add_doses")) {
-                addDoses(tokens);
-            } else if (operation.equals("show_appointments")) {
-                showAppointments(tokens);
-            } else if (operation.equals("logout")) {
-                logout(tokens);
-            } else if (operation.equals("quit")) {
-                System.out.println("Bye!");
-                return;
-            } else {
-                System.out.println("Invalid operation name!");
+            if (!scheduler.execute(response)) {
+                break;
+            }
+        }
+        shutdown();
+    }
+
+    public void printWelcome() {
+        // printing greetings text
+        out.println();
+        out.println("Welcome to the COVID-19 Vaccine Reservation Scheduling Application!");
+        out.println("*** Please enter one of the following commands ***");
+        out.println("> create_patient <username> <password>");  //TODO: implement create_patient (Part 1)
+        out.println("> create_caregiver <username> <password>");
+        out.println("> login_patient <username> <password>");  // TODO: implement login_patient (Part 1)
+        out.println("> login_caregiver <username> <password>");
+        out.println("> search_caregiver_schedule <date> [HH:MM] | <from> <to> [vaccine] [limit] [names]");  // TODO: implement search_caregiver_schedule (Part 2)
+        out.println("> reserve <date> <vaccine> [HH:MM]");  // TODO: implement reserve (Part 2)
+        out.println("> waitlist <date | from..to> <vaccine> | waitlist cancel <vaccine>");
+        out.println("> waitlist priority <patient> <vaccine> <priority>");
+        out.println("> upload_availability <date | date,date,... | from..to> [weekdays] [HH:MM-HH:MM]");
+        out.println("> bulk_upload_availability <file>");
+        out.println("> import_accounts <patients | caregivers> <csv file>");
+        out.println("> cancel <appointment_id>");  // TODO: implement cancel (extra credit)
+        out.println("> add_doses <vaccine> <number>");
+        out.println("> show_appointments [from=<date>] [to=<date>] [vaccine=<name>] [upcoming] [limit=<n>] | next");  // ouTODO: implement show_appointments (Part 2)
+        out.println("> export <appointments | availabilities | vaccines> <file.csv | file.jsonl>[.gz] "
+                + "[from=<date>] [to=<date>] [caregiver=<name>] [vaccine=<name>]");
+        out.println("> logout");  // TODO: implement logout (Part 2)
+        out.println("> pool_stats");
+        out.println("> stats [reset]");
+        out.println("> username_filter [rebuild]");
+        out.println("> quit");
+        out.println();
+    }
+
+    /**
+     * Runs one command line. Returns false once the user has quit (or the input has ended).
+     */
+    public boolean execute(String response) {
+        if (response == null) {
+            return false;
+        }
+        failed = false;
+        // split the user input by spaces
+        String[] tokens = response.split(" ");
+        // check if input exists
+        if (tokens.length == 0) {
+            fail("Please try again!");
+            return true;
+        }
+        // determine which operation to perform
+        String operation = tokens[0];
+        Metrics metrics = Metrics.getInstance();
+        CommandStats stats = metrics.begin(COMMANDS.contains(operation) ? operation : "unknown");
+        long start = System.nanoTime();
+        try {
+            return dispatch(operation, tokens);
+        } catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        } finally {
+            metrics.end(stats, start, failed);
+        }
+    }
+
+    private boolean dispatch(String operation, String[] tokens) {
+        if (operation.equals("create_patient")) {
+            createPatient(tokens);
+        } else if (operation.equals("create_caregiver")) {
+            createCaregiver(tokens);
+        } else if (operation.equals("login_patient")) {
+            loginPatient(tokens);
+        } else if (operation.equals("login_caregiver")) {
+            loginCaregiver(tokens);
+        } else if (operation.equals("search_caregiver_schedule")) {
+            searchCaregiverSchedule(tokens);
+        } else if (operation.equals("reserve")) {
+            reserve(tokens);
+        } else if (operation.equals("waitlist")) {
+            waitlist(tokens);
+        } else if (operation.equals("upload_availability")) {
+            uploadAvailability(tokens);
+        } else if (operation.equals("bulk_upload_availability")) {
+            bulkUploadAvailability(tokens);
+        } else if (operation.equals("import_accounts")) {
+            importAccounts(tokens);
+        } else if (operation.equals("cancel")) {
+            cancel(tokens);
+        } else if (operation.equals("add_doses")) {
+            addDoses(tokens);
+        } else if (operation.equals("show_appointments")) {
+            showAppointments(tokens);
+        } else if (operation.equals("export")) {
+            export(tokens);
+        } else if (operation.equals("logout")) {
+            logout(tokens);
+        } else if (operation.equals("pool_stats")) {
+            poolStats(tokens);
+        } else if (operation.equals("stats")) {
+            stats(tokens);
+        } else if (operation.equals("username_filter")) {
+            usernameFilter(tokens);
+        } else if (operation.equals("quit")) {
+            out.println("Bye!");
+            return false;
+        } else {
+            fail("Invalid operation name!");
+        }
+        return true;
+    }
+
+    /**
+     * Whether the last command run by execute() or executeGroup() was rejected or failed.
+     */
+    boolean lastCommandFailed() {
+        return failed;
+    }
+
+    // prints why the current command did not go through and remembers that it failed
+    private void fail(String message) {
+        out.println(message);
+        failed = true;
+    }
+
+    /**
+     * Runs consecutive commands of one kind (e.g. a run of add_doses) with their database work
+     * batched, where that gives the same result as running them one by one. Other commands run
+     * one at a time. Rejected commands in a batched run are reported before the batch result.
+     * Returns how many of them failed.
+     */
+    int executeGroup(String operation, List<String[]> group) {
+        failed = false;
+        if (group.size() > 1 && BATCHED_COMMANDS.contains(operation)) {
+            // a batch is timed as a whole, apart from the single commands
+            Metrics metrics = Metrics.getInstance();
+            CommandStats stats = metrics.begin(operation + "_batch");
+            long start = System.nanoTime();
+            int failures = group.size();
+            try {
+                if (operation.equals("add_doses")) {
+                    failures = addDoses(group);
+                } else if (operation.equals("upload_availability")) {
+                    failures = uploadAvailability(group);
+                } else {
+                    failures = cancel(group);
+                }
+                return failures;
+            } finally {
+                metrics.end(stats, start, failures > 0);
             }
         }
+        int failures = 0;
+        for (String[] tokens : group) {
+            execute(String.join(" ", tokens));
+            if (failed) {
+                failures++;
+            }
+        }
+        return failures;
     }
 
-    private static void createPatient(String[] tokens) {
+    /**
+     * Flushes held doses and closes the connection pool. Called once when the process exits.
+     */
+    public static void shutdown() {
+        DoseLedger ledger = DoseLedger.getInstanceIfStarted();
+        if (ledger != null) {
+            ledger.shutdown();
+        }
+        ConnectionPool pool = ConnectionPool.getInstanceIfStarted();
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private void createPatient(String[] tokens) {
         if (tokens.length != 3) {
-            System.out.println("Please try again!");
+            fail("Please try again!");
             return;
         }
         String username = tokens[1];
         String password = tokens[2];
         if (!isPasswordValid(password)) {
-            System.out.println("Your password is invalid!");
+            fail("Your password is invalid!");
             return;
         }
         if (usernameExistsPatient(username)) {
-            System.out.println("Username taken, try again!");
+            fail("Username taken, try again!");
             return;
         }
         byte[] salt = Util.generateSalt();
@@ -114,29 +307,35 @@ public class Scheduler {
             currentPatient = new Patient.PatientBuilder(username, salt, hash).build();
             // save to caregiver information to our database
             currentPatient.saveToDB();
-            System.out.println(" *** Account created successfully *** ");
+            out.println(" *** Account created successfully *** ");
         } catch (SQLException e) {
-            System.out.println("Create failed");
+            // the name may have been taken by another process since the filter was loaded
+            if (UsernameFilter.patients().confirmTaken(username)) {
+                currentPatient = null;
+                fail("Username taken, try again!");
+                return;
+            }
+            fail("Create failed");
             e.printStackTrace();
         }
     }
 
-    private static void createCaregiver(String[] tokens) {
+    private void createCaregiver(String[] tokens) {
         // create_caregiver <username> <password>
         // check 1: the length for tokens need to be exactly 3 to include all information (with the operation name)
         if (tokens.length != 3) {
-            System.out.println("Please try again!");
+            fail("Please try again!");
             return;
         }
         String username = tokens[1];
         String password = tokens[2];
         if (!isPasswordValid(password)) {
-            System.out.println("Your password is invalid!");
+            fail("Your password is invalid!");
             return;
         }
         // check 2: check if the username has been taken already
         if (usernameExistsCaregiver(username)) {
-            System.out.println("Username taken, try again!");
+            fail("Username taken, try again!");
             return;
         }
         byte[] salt = Util.generateSalt();
@@ -146,115 +345,54 @@ public class Scheduler {
             currentCaregiver = new Caregiver.CaregiverBuilder(username, salt, hash).build();
             // save to caregiver information to our database
             currentCaregiver.saveToDB();
-            System.out.println(" *** Account created successfully *** ");
+            out.println(" *** Account created successfully *** ");
         } catch (SQLException e) {
-            System.out.println("Create failed");
+            // the name may have been taken by another process since the filter was loaded
+            if (UsernameFilter.caregivers().confirmTaken(username)) {
+                currentCaregiver = null;
+                fail("Username taken, try again!");
+                return;
+            }
+            fail("Create failed");
             e.printStackTrace();
         }
     }
 
-    private static boolean isPasswordValid(String password) {
-        Boolean valid = true;
-        if (password.length() < 8) {
-            System.out.println("Your password should be at least 8 characters!");
-            valid = false;
-        }
-        if (password.equals(password.toLowerCase()) || password.equals(password.toUpperCase())) {
-            System.out.println("Your password should be mix of lower and upper case!");
-            valid = false;
-        }
-        if (true) {
-            int count = 0;
-
-            // check digits from 0 to 9
-            for (int i = 0; i <= 9; i++) {
-
-                // to convert int to string
-                String str1 = Integer.toString(i);
-
-                if (password.contains(str1)) {
-                    count = 1;
-                }
-            }
-            if (count == 0) {
-                System.out.println("Your password should contain numbers!");
-                valid = false;
-            }
+    // package-private so the benchmarks can measure it
+    boolean isPasswordValid(String password) {
+        List<String> problems = PasswordRules.check(password);
+        for (String problem : problems) {
+            out.println(problem);
         }
-        if (true) {
-            int count = 0;
-
-            // checking capital letters
-            for (int i = 65; i <= 90; i++) {
-
-                // type casting
-                char c = (char)i;
-
-                String str1 = Character.toString(c);
-                if (password.toUpperCase().contains(str1)) {
-                    count = 1;
-                }
-            }
-            if (count == 0) {
-                System.out.println("Your password should contain letters");
-                valid = false;
-            }
-        }
-        if (!(password.contains("!") || password.contains("@")
-                || password.contains("#") || password.contains("?"))) {
-            System.out.println("Your password should include at least one special character");
-            valid =  false;
-        }
-        return valid;
+        return problems.isEmpty();
     }
 
-    private static boolean usernameExistsCaregiver(String username) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String selectUsername = "SELECT * FROM Caregivers WHERE Username = ?";
-        try {
-            PreparedStatement statement = con.prepareStatement(selectUsername);
-            statement.setString(1, username);
-            ResultSet resultSet = statement.executeQuery();
-            // returns false if the cursor is not before the first record or if there are no rows in the ResultSet.
-            return resultSet.isBeforeFirst();
-        } catch (SQLException e) {
-            System.out.println("Error occurred when checking username");
-            e.printStackTrace();
-        } finally {
-            cm.closeConnection();
-        }
-        return true;
+    private boolean usernameExistsCaregiver(String username) {
+        return usernameExists(UsernameFilter.caregivers(), username);
     }
 
-    private static boolean usernameExistsPatient(String username) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+    private boolean usernameExistsPatient(String username) {
+        return usernameExists(UsernameFilter.patients(), username);
+    }
 
-        String selectUsername = "SELECT * FROM Patients WHERE Username = ?";
+    // the filter only queries the table when it cannot rule the name out
+    private boolean usernameExists(UsernameFilter filter, String username) {
         try {
-            PreparedStatement statement = con.prepareStatement(selectUsername);
-            statement.setString(1, username);
-            ResultSet resultSet = statement.executeQuery();
-            // returns false if the cursor is not before the first record or if there are no rows in the ResultSet.
-            return resultSet.isBeforeFirst();
+            return filter.exists(username);
         } catch (SQLException e) {
-            System.out.println("Error occurred when checking username");
+            out.println("Error occurred when checking username");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
         return true;
     }
 
-    private static void loginPatient(String[] tokens) {
+    private void loginPatient(String[] tokens) {
         if (currentCaregiver != null || currentPatient != null) {
-            System.out.println("Already logged-in!");
+            fail("Already logged-in!");
             return;
         }
         if (tokens.length != 3) {
-            System.out.println("Please try again!");
+            fail("Please try again!");
             return;
         }
         String username = tokens[1];
@@ -264,28 +402,28 @@ public class Scheduler {
         try {
             patient = new Patient.PatientGetter(username, password).get();
         } catch (SQLException e) {
-            System.out.println("Error occurred when logging in");
+            fail("Error occurred when logging in");
             e.printStackTrace();
         }
         // check if the login was successful
         if (patient == null) {
-            System.out.println("Please try again!");
+            fail("Please try again!");
         } else {
-            System.out.println("Patient logged in as: " + username);
+            out.println("Patient logged in as: " + username);
             currentPatient = patient;
         }
     }
 
-    private static void loginCaregiver(String[] tokens) {
+    private void loginCaregiver(String[] tokens) {
         // login_caregiver <username> <password>
         // check 1: if someone's already logged-in, they need to log out first
         if (currentCaregiver != null || currentPatient != null) {
-            System.out.println("Already logged-in!");
+            fail("Already logged-in!");
             return;
         }
         // check 2: the length for tokens need to be exactly 3 to include all information (with the operation name)
         if (tokens.length != 3) {
-            System.out.println("Please try again!");
+            fail("Please try again!");
             return;
         }
         String username = tokens[1];
@@ -295,534 +433,1019 @@ public class Scheduler {
         try {
             caregiver = new Caregiver.CaregiverGetter(username, password).get();
         } catch (SQLException e) {
-            System.out.println("Error occurred when logging in");
+            fail("Error occurred when logging in");
             e.printStackTrace();
         }
         // check if the login was successful
         if (caregiver == null) {
-            System.out.println("Please try again!");
+            fail("Please try again!");
         } else {
-            System.out.println("Caregiver logged in as: " + username);
+            out.println("Caregiver logged in as: " + username);
             currentCaregiver = caregiver;
         }
     }
 
-    private static void searchCaregiverSchedule(String[] tokens) {
-        if (tokens.length != 2) {
-            System.out.println("Please check your query!");
+    private void searchCaregiverSchedule(String[] tokens) {
+        // search_caregiver_schedule <date> [HH:MM] | <from> <to> [vaccine] [limit] [names]
+        if (tokens.length < 2 || tokens.length > 6) {
+            fail("Please check your query!");
             return;
         }
 
         String date = tokens[1];
 
+        Date d;
+        Integer minute = null;
         try{
-            Date d = Date.valueOf(date);
+            d = Date.valueOf(date);
         } catch (IllegalArgumentException e) {
-            System.out.println("Please enter a valid date!");
+            fail("Please enter a valid date!");
             return;
         }
+        if (tokens.length >= 3 && isDate(tokens[2])) {
+            searchDateRange(d, Date.valueOf(tokens[2]), Arrays.copyOfRange(tokens, 3, tokens.length));
+            return;
+        }
+        if (tokens.length > 3) {
+            fail("Please check your query!");
+            return;
+        }
+        if (tokens.length == 3) {
+            try {
+                minute = TimeSpec.parseTime(tokens[2]);
+            } catch (IllegalArgumentException e) {
+                fail("Please enter a valid time!");
+                return;
+            }
+        }
 
-        List<String> allNames = selectAllAvailable(Date.valueOf(date));
-        List<String> allReserved = selectAllReserved(Date.valueOf(date));
-        allNames.removeAll(allReserved);
-        List<String[]> allVacs = getVac();
+        List<String> allNames;
+        List<String[]> allVacs;
+        ScheduleIndex index = ScheduleIndex.getInstance();
+        Integer at = minute;
+        try {
+            // both are usually in memory; when both have to query, the queries run side by side
+            boolean parallel = !index.isFresh(d) && !VaccineCache.getInstance().isFresh();
+            CompletableFuture<List<String>> names = AsyncExecutor.supplyIf(parallel, () -> at != null
+                    ? index.freeCaregivers(d, at)
+                    : Slots.isEnabled() ? describeFreeSlots(index.freeSlots(d)) : index.freeCaregivers(d));
+            CompletableFuture<List<String[]>> vacs = AsyncExecutor.supplyIf(parallel, Scheduler::getVac);
+            AsyncExecutor.awaitAll(names, vacs);
+            allNames = names.join();
+            allVacs = vacs.join();
+        } catch (SQLException e) {
+            fail("Error occurred when searching the schedule");
+            e.printStackTrace();
+            return;
+        }
         if (allNames.size() == 0) {
-            System.out.println("There is no available caregiver at that time!");
+            out.println("There is no available caregiver at that time!");
         } else {
-            System.out.println("Available Caregivers are:");
+            out.println("Available Caregivers are:");
             for (String str : allNames) {
-                System.out.println(str);
+                out.println(str);
             }
 
         }
-        System.out.println("Vaccine info here :");
+        out.println("Vaccine info here :");
         for(String[] val : allVacs) {
-            System.out.println(val[0] + " has " + val[1] + " left");
+            out.println(val[0] + " has " + val[1] + " left");
         }
     }
 
-    private static List<String[]> getVac() {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+    // search_caregiver_schedule <from> <to> [vaccine] [limit] [names]: the earliest open dates
+    private void searchDateRange(Date from, Date to, String[] options) {
+        String vaccine = null;
+        int limit = DEFAULT_OPEN_DATES;
+        boolean showNames = false;
+        for (String option : options) {
+            if (option.equals("names")) {
+                showNames = true;
+            } else if (option.matches("\\d+")) {
+                try {
+                    limit = Integer.parseInt(option);
+                } catch (NumberFormatException e) {
+                    limit = 0;
+                }
+                if (limit <= 0) {
+                    fail("Please enter a valid limit!");
+                    return;
+                }
+            } else if (vaccine == null) {
+                vaccine = option;
+            } else {
+                fail("Please check your query!");
+                return;
+            }
+        }
+        if (to.before(from)) {
+            fail("Please enter a valid date!");
+            return;
+        }
+        if (ChronoUnit.DAYS.between(from.toLocalDate(), to.toLocalDate()) >= DateSpec.MAX_DATES) {
+            fail("At most " + DateSpec.MAX_DATES + " dates can be searched at once");
+            return;
+        }
 
-        // Get all names
-        List<String[]> allVacs = new ArrayList<String[]>();
-        String selectVacs = "SELECT * FROM Vaccines";
-        try {
-            PreparedStatement statement = con.prepareStatement(selectVacs);
-            ResultSet resultSet = statement.executeQuery();
-            while (resultSet.next()) {
-                String name = resultSet.getString("Name");
-                int doses = resultSet.getInt("Doses");
-                String[] temp = new String[2];
-                temp[0] = name;
-                temp[1] = String.valueOf(doses);
-                allVacs.add(temp);
+        Map<Date, List<String>> open;
+        List<String[]> allVacs;
+        boolean inStock;
+        try {
+            allVacs = getVac();
+            if (vaccine != null) {
+                String name = vaccine;
+                allVacs.removeIf(val -> !val[0].equals(name));
+                if (allVacs.isEmpty()) {
+                    fail("Not valid vaccine name!");
+                    return;
+                }
             }
+            // a date is only open for the vaccine while there are doses of it
+            inStock = vaccine == null || Integer.parseInt(allVacs.get(0)[1]) > 0;
+            open = inStock ? ScheduleIndex.getInstance().freeCaregivers(from, to, limit) : Collections.emptyMap();
         } catch (SQLException e) {
+            fail("Error occurred when searching the schedule");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
+            return;
+        }
+        if (open.isEmpty()) {
+            out.println(!inStock
+                    ? "There are no doses of " + vaccine + " left!"
+                    : "There is no available caregiver from " + from + " to " + to + "!");
+        } else {
+            out.println("Open dates are:");
+            for (Map.Entry<Date, List<String>> entry : open.entrySet()) {
+                int count = entry.getValue().size();
+                String line = entry.getKey() + ": " + count + (count == 1 ? " caregiver" : " caregivers");
+                out.println(showNames ? line + " (" + String.join(", ", entry.getValue()) + ")" : line);
+            }
+        }
+        out.println("Vaccine info here :");
+        for (String[] val : allVacs) {
+            out.println(val[0] + " has " + val[1] + " left");
+        }
+    }
+
+    private static boolean isDate(String token) {
+        try {
+            Date.valueOf(token);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // one line per caregiver with their free time as ranges, e.g. "alice: 09:00-10:30, 11:00-12:00"
+    private static List<String> describeFreeSlots(Map<String, List<Integer>> freeSlots) {
+        int length = Slots.getSlotMinutes();
+        List<String> lines = new ArrayList<>(freeSlots.size());
+        for (Map.Entry<String, List<Integer>> entry : freeSlots.entrySet()) {
+            StringBuilder line = new StringBuilder(entry.getKey()).append(':');
+            List<Integer> starts = entry.getValue();
+            for (int i = 0; i < starts.size(); ) {
+                int from = starts.get(i);
+                int to = from + length;
+                for (i++; i < starts.size() && starts.get(i) == to; i++) {
+                    to += length;
+                }
+                line.append(line.charAt(line.length() - 1) == ':' ? " " : ", ")
+                        .append(TimeSpec.format(from)).append('-').append(TimeSpec.format(to));
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    // served from the inventory cache, so at most one TTL behind other processes
+    private static List<String[]> getVac() throws SQLException {
+        List<String[]> allVacs = new ArrayList<String[]>();
+        for (Vaccine vaccine : VaccineCache.getInstance().getAll()) {
+            String name = vaccine.getVaccineName();
+            // doses leased by this process are still available to patients
+            int doses = vaccine.getAvailableDoses() + DoseLedger.getInstance().held(name);
+            allVacs.add(new String[]{name, String.valueOf(doses)});
         }
         return allVacs;
     }
 
-    private static void reserve(String[] tokens) {
+    private void reserve(String[] tokens) {
         // Check 1 : login
         if (currentPatient == null) {
-            System.out.println("Please login as a patient first!");
+            fail("Please login as a patient first!");
             return;
         }
-        // Check 2 : query length
-        if (tokens.length != 3) {
-            System.out.println("Please check your query!");
+        // Check 2 : query length, reserve <date> <vaccine> [HH:MM]
+        if (tokens.length != 3 && tokens.length != 4) {
+            fail("Please check your query!");
             return;
         }
 
         String date = tokens[1];
         String vaccine = tokens[2];
         // Check 3: if the query is valid
-        try{
-            Date d = Date.valueOf(date);
+        Date d;
+        try {
+            d = Date.valueOf(date);
         } catch (IllegalArgumentException e) {
-            System.out.println("Please enter a valid date!");
+            fail("Please enter a valid date!");
             return;
         }
+        Integer minute = null;
+        if (tokens.length == 4) {
+            try {
+                minute = TimeSpec.parseTime(tokens[3]);
+            } catch (IllegalArgumentException e) {
+                fail("Please enter a valid time!");
+                return;
+            }
+        }
 
-        // Check 4: if the vaccine name is correct
-        if (!nameExistsVaccine(vaccine)) {
-            System.out.println("Not valid vaccine name!");
+        // the engine checks the vaccine, the doses and the free caregivers in the same transaction
+        Reservation reservation;
+        try {
+            reservation = reservationEngine.reserve(currentPatient.getUsername(), d, vaccine, minute);
+        } catch (SQLException e) {
+            fail("Error occurred when making the reservation");
+            e.printStackTrace();
             return;
         }
+        switch (reservation.getStatus()) {
+            case NO_SUCH_VACCINE:
+                fail("Not valid vaccine name!");
+                break;
+            case OUT_OF_STOCK:
+                fail("Not enough doses, please try again later!");
+                out.println("Or enter waitlist " + date + " " + vaccine + " to be booked when doses arrive");
+                break;
+            case NO_SLOT:
+                fail("All spots reserved, please try again later!");
+                out.println("Or enter waitlist " + date + " " + vaccine + " to be booked when a spot opens up");
+                break;
+            case BOOKED:
+                out.println("*** Reservation Success! ***");
+                out.println("Appointment ID: " + reservation.getAppointmentId()
+                        + ", Caregiver username: " + reservation.getCaregiverName()
+                        + (Slots.isEnabled() ? ", Time: " + TimeSpec.format(reservation.getMinute()) : ""));
+                break;
+        }
+    }
 
-        // Check 5: if there are enough vaccines
-        if (!enoughDoses(vaccine)) {
-            System.out.println("Not enough doses, please try again later!");
+    private void waitlist(String[] tokens) {
+        // waitlist <date | from..to> <vaccine>, or waitlist cancel <vaccine>; caregivers use
+        // waitlist priority <patient> <vaccine> <priority>
+        if (currentCaregiver != null && tokens.length > 1 && tokens[1].equals("priority")) {
+            prioritizeWaitlist(tokens);
             return;
         }
-
-        // Check 6: if there is any available time left
-        if (!timeExistsAvailability(Date.valueOf(date))) {
-            System.out.println("Not a available time, please try again later!");
+        if (currentPatient == null) {
+            fail("Please login as a patient first!");
             return;
         }
-
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        // get the maximum Appointment id
-        int max = maxIdFromAppointments();
-
-        // get random cname
-        List<String> allNames = selectAllAvailable(Date.valueOf(date));
-        List<String> allReserved = selectAllReserved(Date.valueOf(date));
-        allNames.removeAll(allReserved);
-        if (allNames.size() == 0) {
-            System.out.println("All spots reserved, please try again later!");
+        if (tokens.length != 3) {
+            fail("Please check your query!");
             return;
         }
-        Random rand = new Random();
-        String cname = allNames.get(rand.nextInt(allNames.size()));
-
-        // get pname
-        String pname = currentPatient.getUsername();
-
-        // make an appointment
-        String addAppointment = "INSERT INTO Appointments (aid, Time, cname, pname, vname) VALUES (?, ?, ?, ?, ?)";
+        String patient = currentPatient.getUsername();
+        String vaccine = tokens[2];
+        if (tokens[1].equals("cancel")) {
+            try {
+                if (waitlist.leave(patient, vaccine)) {
+                    out.println("Left the waitlist for " + vaccine);
+                } else {
+                    fail("You are not on the waitlist for " + vaccine);
+                }
+            } catch (SQLException e) {
+                fail("Error occurred when leaving the waitlist");
+                e.printStackTrace();
+            }
+            return;
+        }
+        Date from;
+        Date to;
         try {
-            PreparedStatement statement = con.prepareStatement(addAppointment);
-            statement.setInt(1, max + 1);
-            statement.setDate(2, Date.valueOf(date));
-            statement.setString(3, cname);
-            statement.setString(4, pname);
-            statement.setString(5, vaccine);
-            statement.executeUpdate();
-
-        } catch (SQLException e) {
-            System.out.println("Error occurred when checking username");
-            e.printStackTrace();
-        } finally {
-            cm.closeConnection();
+            int dots = tokens[1].indexOf("..");
+            from = Date.valueOf(dots < 0 ? tokens[1] : tokens[1].substring(0, dots));
+            to = dots < 0 ? from : Date.valueOf(tokens[1].substring(dots + 2));
+        } catch (IllegalArgumentException e) {
+            fail("Please enter a valid date!");
+            return;
+        }
+        if (to.before(from) || to.toLocalDate().isBefore(LocalDate.now())) {
+            fail("Please enter a valid date!");
+            return;
         }
-        Vaccine vac = null;
         try {
-            vac = new Vaccine.VaccineGetter(vaccine).get();
+            switch (waitlist.join(patient, vaccine, from, to)) {
+                case NO_SUCH_VACCINE:
+                    fail("Not valid vaccine name!");
+                    return;
+                case ALREADY_WAITING:
+                    fail("You are already on the waitlist for " + vaccine + ", enter waitlist cancel "
+                            + vaccine + " first to change it");
+                    return;
+                default:
+                    break;
+            }
+            // a spot may have opened up since the reservation failed
+            waitlist.matchVaccines(List.of(vaccine));
+            if (isWaiting(patient, vaccine)) {
+                out.println("Added to the waitlist for " + vaccine + ", see show_appointments for your position");
+            } else {
+                out.println("*** Reservation Success! *** A spot was free, see show_appointments");
+            }
         } catch (SQLException e) {
-            System.out.println("Error occurred when reducing doses");
+            fail("Error occurred when joining the waitlist");
             e.printStackTrace();
         }
+    }
+
+    private void prioritizeWaitlist(String[] tokens) {
+        if (tokens.length != 5) {
+            fail("Please check your query!");
+            return;
+        }
+        int priority;
+        try {
+            priority = Integer.parseInt(tokens[4]);
+        } catch (NumberFormatException e) {
+            fail("Please try again!");
+            return;
+        }
         try {
-            vac.decreaseAvailableDoses(1);
+            if (waitlist.prioritize(tokens[2], tokens[3], priority)) {
+                out.println("Priority of " + tokens[2] + " on the waitlist for " + tokens[3] + " set to " + priority);
+            } else {
+                fail(tokens[2] + " is not on the waitlist for " + tokens[3]);
+            }
         } catch (SQLException e) {
-            System.out.println("Error occurred when reducing doses");
+            fail("Error occurred when updating the waitlist");
             e.printStackTrace();
         }
-        System.out.println("*** Reservation Success! ***");
     }
 
-
-    private static List<String> selectAllAvailable(Date d) {
+    private boolean isWaiting(String patient, String vaccine) throws SQLException {
         ConnectionManager cm = new ConnectionManager();
         Connection con = cm.createConnection();
-
-        // Get all names
-        List<String> allNames = new ArrayList<String>();
-        String selectCaregivers = "SELECT Username FROM Availabilities WHERE Time = ?";
         try {
-            PreparedStatement statement = con.prepareStatement(selectCaregivers);
-            statement.setDate(1, d);
-            ResultSet resultSet = statement.executeQuery();
-            while (resultSet.next()) {
-                String name = resultSet.getString("Username");
-                allNames.add(name);
+            for (WaitlistEntry entry : waitlist.entries(con, patient)) {
+                if (entry.getVaccineName().equals(vaccine)) {
+                    return true;
+                }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            return false;
         } finally {
             cm.closeConnection();
         }
-        return allNames;
     }
 
-    private static List<String> selectAllReserved(Date d) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+    // books waiting patients into newly available dates; the upload itself already succeeded
+    private void matchWaitlistDates(List<Availability> rows) {
+        Set<Date> dates = new HashSet<>();
+        for (Availability row : rows) {
+            dates.add(row.getTime());
+        }
+        try {
+            reportWaitlistMatches(waitlist.matchDates(dates));
+        } catch (SQLException e) {
+            out.println("Error occurred when matching the waitlist");
+            e.printStackTrace();
+        }
+    }
 
-        // Get reserved names
-        List<String> allReserved = new ArrayList<String>();
-        String selectReserved = "SELECT cname FROM Appointments WHERE Time = ?";
+    // books patients waiting for the vaccines; the doses were already added
+    private void matchWaitlistVaccines(Collection<String> vaccineNames) {
         try {
-            PreparedStatement statement = con.prepareStatement(selectReserved);
-            statement.setDate(1, d);
-            ResultSet resultSet = statement.executeQuery();
-            while (resultSet.next()) {
-                String name = resultSet.getString("cname");
-                allReserved.add(name);
-            }
+            reportWaitlistMatches(waitlist.matchVaccines(vaccineNames));
         } catch (SQLException e) {
+            out.println("Error occurred when matching the waitlist");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
-        return allReserved;
     }
 
-    private static int maxIdFromAppointments() {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+    private void reportWaitlistMatches(int booked) {
+        if (booked > 0) {
+            out.println("Booked " + booked + " waiting patient" + (booked == 1 ? "" : "s") + " from the waitlist");
+        }
+    }
 
-        String selectMax = "SELECT MAX(aid) AS max FROM Appointments";
+    private void uploadAvailability(String[] tokens) {
+        // upload_availability <date | date,date,... | from..to> [weekdays] [HH:MM-HH:MM]
+        // check 1: check if the current logged-in user is a caregiver
+        if (currentCaregiver == null) {
+            fail("Please login as a caregiver first!");
+            return;
+        }
+        // check 2: the dates, and optionally a weekday pattern such as MON,WED,FRI and a shift
+        if (tokens.length < 2 || tokens.length > 4) {
+            fail("Please try again!");
+            return;
+        }
         try {
-            PreparedStatement statement = con.prepareStatement(selectMax);
-            ResultSet resultSet = statement.executeQuery();
-            if (!resultSet.isBeforeFirst()) {
-                return 0;
-            } else {
-                resultSet.next();
-                return resultSet.getInt("max");
+            List<Availability> rows = parseAvailability(currentCaregiver.getUsername(), tokens);
+            Caregiver.UploadResult result = Caregiver.uploadAvailability(rows);
+            markAvailable(rows);
+            out.println("Availability uploaded! " + result.getInserted() + " inserted, "
+                    + result.getSkipped() + " skipped");
+            if (result.getInserted() > 0) {
+                matchWaitlistDates(rows);
             }
+        } catch (IllegalArgumentException e) {
+            fail("Please enter a valid date!");
         } catch (SQLException e) {
-            System.out.println("Error occurred when checking username");
+            fail("Error occurred when uploading availability");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
-        return 0;
     }
 
-    private static boolean timeExistsAvailability(Date d) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        // check if there are enough vaccines
-        String getVaccine = "SELECT Time FROM Availabilities WHERE Time = ?";
-        try{
-            PreparedStatement statement = con.prepareStatement(getVaccine);
-            statement.setDate(1, d);
-            ResultSet resultSet = statement.executeQuery();
-            // returns false if the cursor is not before the first record or if there are no rows in the ResultSet.
-            return resultSet.isBeforeFirst();
+    // a run of upload_availability commands is uploaded as one batched transaction
+    private int uploadAvailability(List<String[]> group) {
+        if (currentCaregiver == null) {
+            for (int i = 0; i < group.size(); i++) {
+                fail("Please login as a caregiver first!");
+            }
+            return group.size();
+        }
+        int failures = 0;
+        List<Availability> rows = new ArrayList<>();
+        for (String[] tokens : group) {
+            if (tokens.length < 2 || tokens.length > 4) {
+                fail("Please try again!");
+                failures++;
+                continue;
+            }
+            try {
+                rows.addAll(parseAvailability(currentCaregiver.getUsername(), tokens));
+            } catch (IllegalArgumentException e) {
+                fail("Please enter a valid date!");
+                failures++;
+            }
+        }
+        if (rows.isEmpty()) {
+            return failures;
+        }
+        try {
+            Caregiver.UploadResult result = Caregiver.uploadAvailability(rows);
+            markAvailable(rows);
+            out.println("Availability uploaded! " + result.getInserted() + " inserted, "
+                    + result.getSkipped() + " skipped (" + (group.size() - failures) + " commands)");
+            if (result.getInserted() > 0) {
+                matchWaitlistDates(rows);
+            }
         } catch (SQLException e) {
-            System.out.println("Error occurred when checking date");
+            fail("Error occurred when uploading availability");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
+            return group.size();
         }
-        return true;
+        return failures;
     }
 
-
-
-    private static boolean enoughDoses(String name) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        // check if there are enough vaccines
-        String getVaccine = "SELECT Doses FROM Vaccines WHERE Name = ?";
-        try{
-            PreparedStatement statement = con.prepareStatement(getVaccine);
-            statement.setString(1, name);
-            ResultSet resultSet = statement.executeQuery();
-            while (resultSet.next()) {
-                int doses = resultSet.getInt("Doses");
-                if (doses < 1) {
-                    return false;
-                }
+    // <dates> [weekdays] [HH:MM-HH:MM] from fields[1] on; without a shift the whole day is available
+    private static List<Availability> parseAvailability(String caregiver, String[] fields) {
+        String weekdays = null;
+        int[] shift = null;
+        for (int i = 2; i < fields.length; i++) {
+            if (TimeSpec.isTime(fields[i]) && shift == null) {
+                shift = TimeSpec.parseShift(fields[i]);
+            } else if (!TimeSpec.isTime(fields[i]) && weekdays == null) {
+                weekdays = fields[i];
+            } else {
+                throw new IllegalArgumentException("Unexpected argument: " + fields[i]);
             }
-        } catch (SQLException e) {
-            System.out.println("Error occurred when checking vaccine name");
-        } finally {
-            cm.closeConnection();
         }
-        return true;
+        if (shift == null) {
+            shift = new int[]{0, TimeSpec.MINUTES_PER_DAY};
+        }
+        List<Availability> rows = new ArrayList<>();
+        for (Date d : DateSpec.parse(fields[1], weekdays)) {
+            rows.add(new Availability(d, caregiver, shift[0], shift[1]));
+        }
+        return rows;
     }
 
-    private static boolean nameExistsVaccine(String name) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+    private static void markAvailable(List<Availability> rows) {
+        ScheduleIndex index = ScheduleIndex.getInstance();
+        for (Availability row : rows) {
+            index.markAvailable(row.getTime(), row.getCaregiverName(), row.getStartMinute(), row.getEndMinute());
+        }
+    }
 
-        String selectName = "SELECT * FROM Vaccines WHERE Name = ?";
+    private void bulkUploadAvailability(String[] tokens) {
+        // bulk_upload_availability <file>
+        // every line of the file is: <caregiver> <dates> [weekdays] [HH:MM-HH:MM]
+        if (currentCaregiver == null) {
+            fail("Please login as a caregiver first!");
+            return;
+        }
+        if (tokens.length != 2) {
+            fail("Please try again!");
+            return;
+        }
+        List<Availability> rows = new ArrayList<>();
+        int badLines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(tokens[1]))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                try {
+                    if (fields.length < 2 || fields.length > 4) {
+                        throw new IllegalArgumentException();
+                    }
+                    rows.addAll(parseAvailability(fields[0], fields));
+                } catch (IllegalArgumentException e) {
+                    out.println("Skipping invalid line " + lineNumber + ": " + line);
+                    badLines++;
+                }
+            }
+        } catch (IOException e) {
+            fail("Could not read " + tokens[1]);
+            return;
+        }
         try {
-            PreparedStatement statement = con.prepareStatement(selectName);
-            statement.setString(1, name);
-            ResultSet resultSet = statement.executeQuery();
-            // returns false if the cursor is not before the first record or if there are no rows in the ResultSet.
-            return resultSet.isBeforeFirst();
+            Caregiver.UploadResult result = Caregiver.uploadAvailability(rows);
+            // the file may name caregivers that do not exist, so reload the dates rather than trust it
+            ScheduleIndex index = ScheduleIndex.getInstance();
+            for (Availability row : rows) {
+                index.invalidate(row.getTime());
+            }
+            out.println("Availability uploaded! " + result.getInserted() + " inserted, "
+                    + result.getSkipped() + " skipped, " + badLines + " invalid lines");
+            if (result.getInserted() > 0) {
+                matchWaitlistDates(rows);
+            }
         } catch (SQLException e) {
-            System.out.println("Error occurred when checking vaccine name");
+            fail("Error occurred when uploading availability");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
-        return true;
     }
 
-    private static void uploadAvailability(String[] tokens) {
-        // upload_availability <date>
-        // check 1: check if the current logged-in user is a caregiver
+    private void importAccounts(String[] tokens) {
+        // import_accounts <patients | caregivers> <csv file>
+        // every line of the file is: <username>,<password>
         if (currentCaregiver == null) {
-            System.out.println("Please login as a caregiver first!");
+            fail("Please login as a caregiver first!");
             return;
         }
-        // check 2: the length for tokens need to be exactly 2 to include all information (with the operation name)
-        if (tokens.length != 2) {
-            System.out.println("Please try again!");
+        if (tokens.length != 3) {
+            fail("Please try again!");
+            return;
+        }
+        AccountImporter importer;
+        if (tokens[1].equals("patients")) {
+            importer = AccountImporter.patients(out);
+        } else if (tokens[1].equals("caregivers")) {
+            importer = AccountImporter.caregivers(out);
+        } else {
+            fail("Please try again!");
             return;
         }
-        String date = tokens[1];
         try {
-            Date d = Date.valueOf(date);
-            currentCaregiver.uploadAvailability(d);
-            System.out.println("Availability uploaded!");
-        } catch (IllegalArgumentException e) {
-            System.out.println("Please enter a valid date!");
+            AccountImporter.Result result = importer.run(Paths.get(tokens[2]));
+            double seconds = result.getElapsedNanos() / 1e9;
+            out.println(String.format("Accounts imported! %d inserted, %d taken, %d invalid lines in %.1f s "
+                    + "(%.0f accounts/s)", result.getInserted(), result.getTaken(), result.getInvalid(), seconds,
+                    result.getInserted() / Math.max(seconds, 1e-9)));
+        } catch (IOException e) {
+            fail("Could not read " + tokens[2]);
         } catch (SQLException e) {
-            System.out.println("Error occurred when uploading availability");
+            fail("Error occurred when importing accounts");
             e.printStackTrace();
         }
     }
 
-    private static void cancel(String[] tokens) {
+    private void cancel(String[] tokens) {
         // check 1: check if the token length is valid
         if (tokens.length != 2) {
-            System.out.println("Please try again!");
+            fail("Please try again!");
             return;
         }
         // check 2: login
         if (currentCaregiver == null && currentPatient == null) {
-            System.out.println("Please login first!");
+            fail("Please login first!");
             return;
         }
 
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        int aid = Integer.parseInt(tokens[1]);
-        String vaccine = null;
-
-        // reduce vaccine doses
-        String selectVacName = "Select vname FROM Appointments WHERE aid = ?";
+        int aid;
         try {
-            PreparedStatement statement = con.prepareStatement(selectVacName);
-            statement.setInt(1, aid);
-            ResultSet resultSet = statement.executeQuery();
-            if (!resultSet.isBeforeFirst()) {
-                System.out.println("Invalid Appointment ID!");
-                return;
-            }
-            resultSet.next();
-            vaccine = resultSet.getString("vname");
-        } catch (SQLException e) {
-            e.printStackTrace();
+            aid = Integer.parseInt(tokens[1]);
+        } catch (NumberFormatException e) {
+            fail("Please try again!");
+            return;
         }
-        Vaccine vac = null;
+
+        ConnectionManager cm = new ConnectionManager();
         try {
-            vac = new Vaccine.VaccineGetter(vaccine).get();
-            vac.increaseAvailableDoses(1);
+            cancel(cm.createConnection(), aid);
         } catch (SQLException e) {
-            System.out.println("Error occurred when reducing doses");
+            fail("Error occurred when cancelling the appointment");
             e.printStackTrace();
+        } finally {
+            cm.closeConnection();
         }
+    }
 
-        // Check the deleted name is matched with the current username
-        if (currentPatient != null) {
-            String check = "SELECT pname FROM Appointments WHERE aid = ?";
-            try {
-                PreparedStatement statement = con.prepareStatement(check);
-                statement.setInt(1, aid);
-                ResultSet resultSet = statement.executeQuery();
-                resultSet.next();
-                if (!resultSet.getString("pname").equals(currentPatient.getUsername())) {
-                    System.out.println("You have no access to change the Appointment!");
-                    return;
+    // a run of cancel commands shares one connection
+    private int cancel(List<String[]> group) {
+        int failures = 0;
+        ConnectionManager cm = null;
+        Connection con = null;
+        try {
+            for (String[] tokens : group) {
+                failed = false;
+                if (tokens.length != 2) {
+                    fail("Please try again!");
+                } else if (currentCaregiver == null && currentPatient == null) {
+                    fail("Please login first!");
+                } else {
+                    try {
+                        int aid = Integer.parseInt(tokens[1]);
+                        if (con == null) {
+                            cm = new ConnectionManager();
+                            con = cm.createConnection();
+                        }
+                        cancel(con, aid);
+                    } catch (NumberFormatException e) {
+                        fail("Please try again!");
+                    } catch (SQLException e) {
+                        fail("Error occurred when cancelling the appointment");
+                        e.printStackTrace();
+                    }
                 }
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
-        }
-        if (currentCaregiver != null) {
-            String check = "SELECT cname FROM Appointments WHERE aid = ?";
-            try {
-                PreparedStatement statement = con.prepareStatement(check);
-                statement.setInt(1, aid);
-                ResultSet resultSet = statement.executeQuery();
-                resultSet.next();
-                if (!resultSet.getString("cname").equals(currentCaregiver.getUsername())) {
-                    System.out.println("You have no access to change the Appointment!");
-                    return;
+                if (failed) {
+                    failures++;
                 }
-            } catch (SQLException e) {
-                e.printStackTrace();
+            }
+        } finally {
+            if (cm != null) {
+                cm.closeConnection();
             }
         }
+        return failures;
+    }
 
-        // delete
-        String deleteApp = "DELETE FROM Appointments WHERE aid = ?";
+    private void cancel(Connection con, int aid) {
         try {
-            PreparedStatement statement = con.prepareStatement(deleteApp);
-            statement.setInt(1, aid);
-            statement.executeUpdate();
+            Appointment appointment = appointments.find(con, aid);
+            if (appointment == null) {
+                fail("Invalid Appointment ID!");
+                return;
+            }
+            // Check the deleted name is matched with the current username
+            if (currentPatient != null && !appointment.getPatientName().equals(currentPatient.getUsername())) {
+                fail("You have no access to change the Appointment!");
+                return;
+            }
+            if (currentCaregiver != null && !appointment.getCaregiverName().equals(currentCaregiver.getUsername())) {
+                fail("You have no access to change the Appointment!");
+                return;
+            }
+
+            if (appointments.delete(con, aid)) {
+                // the dose goes back to the ledger and reaches the database on its next flush
+                DoseLedger.getInstance().giveBack(appointment.getVaccineName(), 1);
+                ScheduleIndex.getInstance().cancelled(appointment.getTime(), appointment.getCaregiverName(),
+                        appointment.getMinute(), appointment.getPatientName());
+            }
         } catch (SQLException e) {
+            fail("Error occurred when cancelling the appointment");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
     }
 
-    private static void addDoses(String[] tokens) {
+    private void addDoses(String[] tokens) {
         // add_doses <vaccine> <number>
         // check 1: check if the current logged-in user is a caregiver
         if (currentCaregiver == null) {
-            System.out.println("Please login as a caregiver first!");
+            fail("Please login as a caregiver first!");
             return;
         }
         // check 2: the length for tokens need to be exactly 3 to include all information (with the operation name)
         if (tokens.length != 3) {
-            System.out.println("Please try again!");
+            fail("Please try again!");
             return;
         }
         String vaccineName = tokens[1];
-        int doses = Integer.parseInt(tokens[2]);
-        Vaccine vaccine = null;
+        int doses;
+        try {
+            doses = Integer.parseInt(tokens[2]);
+        } catch (NumberFormatException e) {
+            fail("Please try again!");
+            return;
+        }
+        if (doses <= 0) {
+            fail("Please try again!");
+            return;
+        }
+        Vaccine vaccine;
         try {
             vaccine = new Vaccine.VaccineGetter(vaccineName).get();
+            // check 3: if getter returns null, it means that we need to create the vaccine and insert it into the
+            //          Vaccines table
+            if (vaccine == null) {
+                vaccine = new Vaccine.VaccineBuilder(vaccineName, doses).build();
+                vaccine.saveToDB();
+            } else {
+                // if the vaccine is not null, meaning that the vaccine already exists in our table
+                vaccine.increaseAvailableDoses(doses);
+            }
         } catch (SQLException e) {
-            System.out.println("Error occurred when adding doses");
+            fail("Error occurred when adding doses");
             e.printStackTrace();
+            return;
         }
-        // check 3: if getter returns null, it means that we need to create the vaccine and insert it into the Vaccines
-        //          table
-        if (vaccine == null) {
-            try {
-                vaccine = new Vaccine.VaccineBuilder(vaccineName, doses).build();
-                vaccine.saveToDB();
-            } catch (SQLException e) {
-                System.out.println("Error occurred when adding doses");
-                e.printStackTrace();
+        out.println("Doses updated!");
+        matchWaitlistVaccines(List.of(vaccineName));
+    }
+
+    // a run of add_doses commands is summed per vaccine and applied in one transaction
+    private int addDoses(List<String[]> group) {
+        if (currentCaregiver == null) {
+            for (int i = 0; i < group.size(); i++) {
+                fail("Please login as a caregiver first!");
             }
-        } else {
-            // if the vaccine is not null, meaning that the vaccine already exists in our table
+            return group.size();
+        }
+        int failures = 0;
+        Map<String, Integer> totals = new LinkedHashMap<>();
+        for (String[] tokens : group) {
+            int doses = 0;
+            if (tokens.length == 3) {
+                try {
+                    doses = Integer.parseInt(tokens[2]);
+                } catch (NumberFormatException e) {
+                    doses = 0;
+                }
+            }
+            if (doses <= 0) {
+                fail("Please try again!");
+                failures++;
+                continue;
+            }
+            totals.merge(tokens[1], doses, Integer::sum);
+        }
+        if (totals.isEmpty()) {
+            return failures;
+        }
+
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            Connection con = cm.createConnection();
+            con.setAutoCommit(false);
             try {
-                vaccine.increaseAvailableDoses(doses);
+                vaccines.addDoses(con, totals);
+                con.commit();
+                for (String vaccineName : totals.keySet()) {
+                    VaccineCache.invalidateIfStarted(vaccineName);
+                }
             } catch (SQLException e) {
-                System.out.println("Error occurred when adding doses");
-                e.printStackTrace();
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
             }
+        } catch (SQLException e) {
+            fail("Error occurred when adding doses");
+            e.printStackTrace();
+            return group.size();
+        } finally {
+            cm.closeConnection();
+        }
+        for (int i = failures; i < group.size(); i++) {
+            out.println("Doses updated!");
         }
-        System.out.println("Doses updated!");
+        matchWaitlistVaccines(totals.keySet());
+        return failures;
     }
 
-    private static void showAppointments(String[] tokens) {
+    private void showAppointments(String[] tokens) {
         if (currentCaregiver == null && currentPatient == null) {
-            System.out.println("Please login first!");
+            fail("Please login first!");
             return;
         }
 
+        AppointmentFilter filter;
+        if (tokens.length == 2 && tokens[1].equals("next")) {
+            if (nextAppointmentPage == null) {
+                out.println("There are no more appointments to show");
+                return;
+            }
+            filter = nextAppointmentPage;
+        } else {
+            try {
+                filter = AppointmentFilter.parse(tokens, 1);
+            } catch (IllegalArgumentException e) {
+                // Date.valueOf and Integer.parseInt also throw IllegalArgumentException
+                fail("Invalid option: " + e.getMessage());
+                out.println("Usage: show_appointments [from=<date>] [to=<date>] [vaccine=<name>] [upcoming] [limit=<n>]");
+                return;
+            }
+        }
+
         ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+        try {
+            Connection con = cm.createConnection();
+            nextAppointmentPage = showAppointments(con, filter);
+            if (currentPatient != null && filter.isFirstPage()) {
+                showWaitlist(con);
+            }
+        } catch (SQLException e) {
+            fail("Error occurred when showing appointments");
+            e.printStackTrace();
+        } finally {
+            cm.closeConnection();
+        }
+    }
 
-        if (currentCaregiver != null) {
-            String cname = currentCaregiver.getUsername();
-            String selectApp = "SELECT aid, vname, Time, pname FROM Appointments WHERE cname = ?";
-            try {
-                PreparedStatement statement = con.prepareStatement(selectApp);
-                statement.setString(1, cname);
-                ResultSet resultSet = statement.executeQuery();
-                if (!resultSet.isBeforeFirst()) {
-                    System.out.println("There is no Appointment info");
-                    return;
-                }
-                System.out.println("Your Appointment info are:");
-                while (resultSet.next()) {
-                    System.out.println("Id: " + resultSet.getInt("aid"));
-                    System.out.println("Vaccine Name: " + resultSet.getString("vname"));
-                    System.out.println("Time: " + resultSet.getDate("Time"));
-                    System.out.println("Patient Name: " + resultSet.getString("pname"));
-                    System.out.println();
+    /**
+     * Prints one page of the current user's appointments, ordered by (Time, SlotStart, aid). Returns the
+     * filter positioned at the following page, or null if this was the last one.
+     */
+    private AppointmentFilter showAppointments(Connection con, AppointmentFilter filter) throws SQLException {
+        boolean caregiver = currentCaregiver != null;
+        String username = caregiver ? currentCaregiver.getUsername() : currentPatient.getUsername();
+        List<Appointment> page = appointments.findPage(con, caregiver, username, filter);
+
+        // one buffered write per page instead of one per field
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out)));
+        try {
+            if (page.isEmpty()) {
+                writer.println(filter.isFirstPage() ? "There is no Appointment info" : "There are no more appointments to show");
+                return null;
+            }
+            writer.println(filter.isFirstPage() ? "Your Appointment info are:" : "More Appointment info:");
+            int shown = Math.min(page.size(), filter.getPageSize());
+            for (int i = 0; i < shown; i++) {
+                Appointment appointment = page.get(i);
+                writer.println("Id: " + appointment.getId());
+                writer.println("Vaccine Name: " + appointment.getVaccineName());
+                writer.println("Time: " + appointment.getTime()
+                        + (Slots.isEnabled() ? " " + TimeSpec.format(appointment.getMinute()) : ""));
+                if (caregiver) {
+                    writer.println("Patient Name: " + appointment.getPatientName());
+                } else {
+                    writer.println("Caregiver Name: " + appointment.getCaregiverName());
                 }
-            } catch (SQLException e) {
-                e.printStackTrace();
-            } finally {
-                cm.closeConnection();
+                writer.println();
+            }
+            if (page.size() > filter.getPageSize()) {
+                writer.println("More appointments: enter show_appointments next");
+                Appointment last = page.get(shown - 1);
+                return filter.after(last.getTime(), last.getMinute(), last.getId());
+            }
+            return null;
+        } finally {
+            // flush but do not close: closing would close the session's stream
+            writer.flush();
+        }
+    }
+
+    // the patient's waitlist entries and where they stand
+    private void showWaitlist(Connection con) throws SQLException {
+        List<WaitlistEntry> entries = waitlist.entries(con, currentPatient.getUsername());
+        if (entries.isEmpty()) {
+            return;
+        }
+        out.println("Your Waitlist info are:");
+        Date today = Date.valueOf(LocalDate.now());
+        for (WaitlistEntry entry : entries) {
+            out.println("Vaccine Name: " + entry.getVaccineName());
+            boolean oneDate = entry.getTo().equals(entry.getFrom());
+            out.println("Dates: " + entry.getFrom() + (oneDate ? "" : ".." + entry.getTo()));
+            if (entry.getTo().before(today)) {
+                out.println("Status: expired, enter waitlist cancel " + entry.getVaccineName() + " to remove it");
+            } else {
+                out.println("Status: waiting, " + entry.getPosition() + " ahead");
             }
+            out.println();
+        }
+    }
+
+    private void export(String[] tokens) {
+        // export <table> <file> [from=<date>] [to=<date>] [caregiver=<name>] [vaccine=<name>]
+        if (currentCaregiver == null) {
+            fail("Please login as a caregiver first!");
+            return;
+        }
+        if (tokens.length < 3 || !ExportRepository.isTable(tokens[1])) {
+            fail("Please try again!");
+            return;
         }
-        if (currentPatient != null) {
-            String pname = currentPatient.getUsername();
-            String selectApp = "SELECT aid, vname, Time, cname FROM Appointments WHERE pname = ?";
+        String table = tokens[1];
+        ExportFilter filter;
+        try {
+            filter = ExportFilter.parse(tokens, 3);
+            ExportRepository.checkFilter(table, filter);
+        } catch (IllegalArgumentException e) {
+            fail("Please try again! " + e.getMessage());
+            return;
+        }
+        long start = System.nanoTime();
+        long rows;
+        ConnectionManager cm = new ConnectionManager();
+        try (ExportWriter writer = ExportWriter.open(Paths.get(tokens[2]), ExportRepository.columns(table))) {
+            Connection con = cm.createConnection();
+            // some drivers only stream a result set inside a transaction
+            con.setAutoCommit(false);
             try {
-                PreparedStatement statement = con.prepareStatement(selectApp);
-                statement.setString(1, pname);
-                ResultSet resultSet = statement.executeQuery();
-                if (!resultSet.isBeforeFirst()) {
-                    System.out.println("There is no Appointment info");
-                    return;
-                }
-                System.out.println("Your Appointment info are:");
-                while (resultSet.next()) {
-                    System.out.println("Id: " + resultSet.getInt("aid"));
-                    System.out.println("Vaccine Name: " + resultSet.getString("vname"));
-                    System.out.println("Time: " + resultSet.getDate("Time"));
-                    System.out.println("Patient Name: " + resultSet.getString("cname"));
-                    System.out.println();
-                }
-            } catch (SQLException e) {
-                e.printStackTrace();
+                rows = exports.export(con, table, filter, writer::write);
             } finally {
-                cm.closeConnection();
+                con.setAutoCommit(true);
             }
+        } catch (IllegalArgumentException e) {
+            fail("Please try again! " + e.getMessage());
+            return;
+        } catch (IOException e) {
+            fail("Could not write " + tokens[2]);
+            return;
+        } catch (SQLException e) {
+            fail("Error occurred when exporting " + table);
+            e.printStackTrace();
+            return;
+        } finally {
+            cm.closeConnection();
         }
-
-
-
+        double seconds = (System.nanoTime() - start) / 1e9;
+        out.println(String.format("Exported %d rows to %s in %.1f s (%.0f rows/s)", rows, tokens[2], seconds,
+                rows / Math.max(seconds, 1e-9)));
     }
 
-    private static void logout(String[] tokens) {
+    private void logout(String[] tokens) {
         if (currentPatient == null && currentCaregiver == null) {
-            System.out.println("You haven't logged in!");
+            fail("You haven't logged in!");
             return;
         }
         currentPatient = null;
         currentCaregiver = null;
-        System.out.println("*** Logout Successfully ***");
+        nextAppointmentPage = null;
+        out.println("*** Logout Successfully ***");
+    }
+
+    private void poolStats(String[] tokens) {
+        ConnectionPool pool = ConnectionPool.getInstanceIfStarted();
+        if (pool == null) {
+            out.println("The connection pool has not been started yet");
+            return;
+        }
+        out.println(pool.getStats());
+    }
+
+    private void stats(String[] tokens) {
+        // stats [reset]
+        if (tokens.length == 2 && tokens[1].equals("reset")) {
+            Metrics.getInstance().reset();
+            out.println("Statistics reset");
+            return;
+        }
+        if (tokens.length != 1) {
+            fail("Please try again!");
+            return;
+        }
+        out.println(String.format("%-26s %8s %7s %9s %9s %9s %9s %8s %8s %9s", "command", "count", "errors",
+                "p50 ms", "p95 ms", "p99 ms", "max ms", "conns", "stmts", "rows"));
+        for (CommandStats stats : Metrics.getInstance().getCommands()) {
+            out.println(String.format("%-26s %8d %7d %9.3f %9.3f %9.3f %9.3f %8d %8d %9d", stats.getCommand(),
+                    stats.getCount(), stats.getErrors(), stats.getP50Micros() / 1000.0,
+                    stats.getP95Micros() / 1000.0, stats.getP99Micros() / 1000.0, stats.getMaxMicros() / 1000.0,
+                    stats.getConnections(), stats.getStatements(), stats.getRows()));
+        }
+    }
+
+    private void usernameFilter(String[] tokens) {
+        // username_filter [rebuild]
+        boolean rebuild = tokens.length == 2 && tokens[1].equals("rebuild");
+        if (tokens.length != 1 && !rebuild) {
+            fail("Please try again!");
+            return;
+        }
+        UsernameFilter[] filters = {UsernameFilter.patients(), UsernameFilter.caregivers()};
+        if (rebuild) {
+            try {
+                for (UsernameFilter filter : filters) {
+                    filter.rebuild();
+                }
+            } catch (SQLException e) {
+                fail("Error occurred when rebuilding the username filter");
+                e.printStackTrace();
+                return;
+            }
+            out.println("Username filter rebuilt");
+        }
+        out.println(String.format("%-12s %10s %10s %9s %6s %9s %10s %10s %9s", "table", "usernames", "capacity",
+                "memory KB", "hashes", "exp. fpp", "skipped", "queried", "false pos"));
+        for (UsernameFilter filter : filters) {
+            if (!filter.isLoaded()) {
+                out.println(String.format("%-12s %10s", filter.getTable(), "not loaded"));
+                continue;
+            }
+            out.println(String.format("%-12s %10d %10d %9.1f %6d %8.3f%% %10d %10d %9d", filter.getTable(),
+                    filter.getUsernames(), filter.getCapacity(), filter.getMemoryBytes() / 1024.0,
+                    filter.getHashes(), filter.getExpectedFalsePositiveRate() * 100, filter.getSkipped(),
+                    filter.getQueried(), filter.getFalsePositives()));
+        }
     }
 }
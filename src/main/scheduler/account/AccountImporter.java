@@ -0,0 +1,278 @@
+package scheduler.account;
+
+import scheduler.db.ConnectionManager;
+import scheduler.db.Settings;
+import scheduler.model.Credentials;
+import scheduler.repository.AccountRepository;
+import scheduler.repository.CaregiverRepository;
+import scheduler.repository.PatientRepository;
+import scheduler.util.PasswordHasher;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Creates patient or caregiver accounts from a CSV file of username,password lines, for
+ * onboarding many accounts at once.
+ *
+ * The file is streamed. Each line is checked like create_patient and create_caregiver check
+ * their arguments, and lines that are invalid, repeat an earlier name or name a taken account
+ * are reported and skipped. Passwords are hashed on the password hashing pool, one thread per
+ * core, while the previous chunk of ImportChunkSize (default 1000) accounts is inserted through
+ * batched statements and committed; an error stops the import, keeping the chunks committed
+ * so far. A progress line with the rate so far is printed after every chunk.
+ */
+public class AccountImporter {
+
+    private static final String CHUNK_SIZE_ENV = "ImportChunkSize";
+    private static final String HEADER = "username,password";
+    // the Username columns are varchar(255)
+    private static final int MAX_USERNAME_LENGTH = 255;
+
+    private static final int chunkSize = Settings.getInt(CHUNK_SIZE_ENV, 1000, 1, Integer.MAX_VALUE);
+
+    private final AccountRepository accounts;
+    private final UsernameFilter filter;
+    private final PrintStream out;
+
+    private int lines = 0;
+    private int inserted = 0;
+    private int taken = 0;
+    private int invalid = 0;
+    private long started;
+
+    private AccountImporter(AccountRepository accounts, UsernameFilter filter, PrintStream out) {
+        this.accounts = accounts;
+        this.filter = filter;
+        this.out = out;
+    }
+
+    public static AccountImporter patients(PrintStream out) {
+        return new AccountImporter(new PatientRepository(), UsernameFilter.patients(), out);
+    }
+
+    public static AccountImporter caregivers(PrintStream out) {
+        return new AccountImporter(new CaregiverRepository(), UsernameFilter.caregivers(), out);
+    }
+
+    /**
+     * Imports the file. Skipped lines and progress are printed as they come; the counts are
+     * returned at the end.
+     */
+    public Result run(Path file) throws IOException, SQLException {
+        started = System.nanoTime();
+        PasswordHasher hasher = PasswordHasher.getInstance();
+        // names read so far, so a name repeated in the file is reported rather than hashed twice
+        Set<String> seen = new HashSet<>();
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            con.setAutoCommit(false);
+            List<PendingAccount> chunk = new ArrayList<>(chunkSize);
+            // the chunk whose passwords are being hashed while the next one is read
+            List<PendingAccount> hashing = null;
+            String line;
+            boolean first = true;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                if (first) {
+                    first = false;
+                    if (line.equalsIgnoreCase(HEADER)) {
+                        continue;
+                    }
+                }
+                List<String> fields = splitCsv(line);
+                String problem = check(fields);
+                if (problem != null) {
+                    out.println("Skipping invalid line " + lines + ": " + problem);
+                    invalid++;
+                    continue;
+                }
+                String username = fields.get(0);
+                if (!seen.add(username)) {
+                    out.println("Skipping line " + lines + ": " + username + " appears earlier in the file");
+                    taken++;
+                    continue;
+                }
+                if (filter.exists(username)) {
+                    out.println("Skipping line " + lines + ": username " + username + " is taken");
+                    taken++;
+                    continue;
+                }
+                byte[] salt = hasher.generateSalt();
+                chunk.add(new PendingAccount(username, salt,
+                        hasher.hashAsync(fields.get(1), salt, hasher.getCurrentParams())));
+                if (chunk.size() == chunkSize) {
+                    if (hashing != null) {
+                        store(con, hashing);
+                    }
+                    hashing = chunk;
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (hashing != null) {
+                store(con, hashing);
+            }
+            if (!chunk.isEmpty()) {
+                store(con, chunk);
+            }
+        } catch (SQLException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            con.setAutoCommit(true);
+            cm.closeConnection();
+        }
+        return new Result(lines, inserted, taken, invalid, System.nanoTime() - started);
+    }
+
+    // waits for the chunk's hashes, then inserts and commits it
+    private void store(Connection con, List<PendingAccount> chunk) throws SQLException {
+        PasswordHasher.HashParams params = PasswordHasher.getInstance().getCurrentParams();
+        List<Credentials> rows = new ArrayList<>(chunk.size());
+        for (PendingAccount account : chunk) {
+            rows.add(new Credentials(account.username, account.salt, account.hash.join(), params));
+        }
+        int done = accounts.insertMissing(con, rows);
+        con.commit();
+        for (Credentials row : rows) {
+            filter.add(row.getUsername());
+        }
+        inserted += done;
+        // taken by another session since the filter was asked
+        taken += rows.size() - done;
+        double seconds = (System.nanoTime() - started) / 1e9;
+        out.println(String.format("Read %d lines: %d inserted, %d taken, %d invalid (%.0f accounts/s)",
+                lines, inserted, taken, invalid, inserted / seconds));
+    }
+
+    // why the fields are not a usable username and password, or null if they are
+    private static String check(List<String> fields) {
+        if (fields == null) {
+            return "unterminated quote";
+        }
+        if (fields.size() != 2) {
+            return "expected username,password";
+        }
+        String username = fields.get(0);
+        String password = fields.get(1);
+        if (username.isEmpty()) {
+            return "missing username";
+        }
+        if (username.length() > MAX_USERNAME_LENGTH) {
+            return "username longer than " + MAX_USERNAME_LENGTH + " characters";
+        }
+        // commands are split on spaces, so such an account could never log in
+        if (hasWhitespace(username) || hasWhitespace(password)) {
+            return "username and password may not contain spaces";
+        }
+        List<String> problems = PasswordRules.check(password);
+        if (!problems.isEmpty()) {
+            return username + ": " + String.join(" ", problems);
+        }
+        return null;
+    }
+
+    private static boolean hasWhitespace(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.isWhitespace(value.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // splits a CSV line; fields may be quoted, with "" for a quote. Null if a quote is not closed
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>(2);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static class PendingAccount {
+        private final String username;
+        private final byte[] salt;
+        private final CompletableFuture<byte[]> hash;
+
+        PendingAccount(String username, byte[] salt, CompletableFuture<byte[]> hash) {
+            this.username = username;
+            this.salt = salt;
+            this.hash = hash;
+        }
+    }
+
+    public static class Result {
+        private final int lines;
+        private final int inserted;
+        private final int taken;
+        private final int invalid;
+        private final long elapsedNanos;
+
+        public Result(int lines, int inserted, int taken, int invalid, long elapsedNanos) {
+            this.lines = lines;
+            this.inserted = inserted;
+            this.taken = taken;
+            this.invalid = invalid;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getLines() {
+            return lines;
+        }
+
+        public int getInserted() {
+            return inserted;
+        }
+
+        public int getTaken() {
+            return taken;
+        }
+
+        public int getInvalid() {
+            return invalid;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package scheduler.account;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What a new account's password must look like: at least 8 characters, upper and lower case
+ * letters, a digit and one of ! @ # ?. Shared by create_patient, create_caregiver and
+ * import_accounts so they accept the same passwords.
+ */
+public class PasswordRules {
+
+    private static final int MIN_LENGTH = 8;
+    private static final String SPECIAL_CHARACTERS = "!@#?";
+
+    private PasswordRules() {
+    }
+
+    /**
+     * Why the password is not acceptable, one message per broken rule; empty if it is fine.
+     */
+    public static List<String> check(String password) {
+        List<String> problems = new ArrayList<>();
+        if (password.length() < MIN_LENGTH) {
+            problems.add("Your password should be at least 8 characters!");
+        }
+        if (password.equals(password.toLowerCase()) || password.equals(password.toUpperCase())) {
+            problems.add("Your password should be mix of lower and upper case!");
+        }
+        boolean digit = false;
+        boolean letter = false;
+        boolean special = false;
+        for (int i = 0; i < password.length(); i++) {
+            char c = password.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digit = true;
+            } else if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')) {
+                letter = true;
+            } else if (SPECIAL_CHARACTERS.indexOf(c) >= 0) {
+                special = true;
+            }
+        }
+        if (!digit) {
+            problems.add("Your password should contain numbers!");
+        }
+        if (!letter) {
+            problems.add("Your password should contain letters");
+        }
+        if (!special) {
+            problems.add("Your password should include at least one special character");
+        }
+        return problems;
+    }
+}
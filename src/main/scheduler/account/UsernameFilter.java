@@ -0,0 +1,280 @@
+package scheduler.account;
+
+import scheduler.db.ConnectionManager;
+import scheduler.repository.AccountRepository;
+import scheduler.repository.CaregiverRepository;
+import scheduler.repository.PatientRepository;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Bloom filter over the usernames of one account table, so that create_patient and
+ * create_caregiver only ask the database whether a name is taken when the filter cannot rule it
+ * out.
+ *
+ * The filter is loaded from the table at startup (or on first use), sized for twice the
+ * accounts there at a 1% false positive rate, and every account this process creates is added
+ * to it. Once the accounts outgrow that size it is rebuilt from the table. Accounts created by
+ * other processes are only picked up by a rebuild (the username_filter rebuild command); until
+ * then the primary key rejects them and confirmTaken() teaches the filter. Names are hashed in
+ * lower case, since SQL Server compares them case-insensitively.
+ */
+public class UsernameFilter {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int MIN_CAPACITY = 1024;
+
+    private static final UsernameFilter patients = new UsernameFilter("Patients", new PatientRepository());
+    private static final UsernameFilter caregivers = new UsernameFilter("Caregivers", new CaregiverRepository());
+
+    private final String table;
+    private final AccountRepository accounts;
+    // null until loaded, and again once full
+    private volatile Bits bits;
+
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder queried = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    private UsernameFilter(String table, AccountRepository accounts) {
+        this.table = table;
+        this.accounts = accounts;
+    }
+
+    public static UsernameFilter patients() {
+        return patients;
+    }
+
+    public static UsernameFilter caregivers() {
+        return caregivers;
+    }
+
+    /**
+     * Loads both filters. A filter that fails to load is loaded again on first use.
+     */
+    public static void preload() {
+        for (UsernameFilter filter : new UsernameFilter[]{patients, caregivers}) {
+            try {
+                filter.loaded();
+            } catch (SQLException e) {
+                System.out.println("Error occurred when loading the " + filter.table + " usernames");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Whether the username is taken. Only goes to the database when the filter says it might be.
+     */
+    public boolean exists(String username) throws SQLException {
+        if (!loaded().mightContain(key(username))) {
+            skipped.increment();
+            return false;
+        }
+        queried.increment();
+        boolean exists = existsInDatabase(username);
+        if (!exists) {
+            falsePositives.increment();
+        }
+        return exists;
+    }
+
+    /**
+     * Adds a username this process has just inserted.
+     */
+    public synchronized void add(String username) {
+        Bits b = bits;
+        if (b == null) {
+            // the insert is committed, so the next load reads it from the table
+            return;
+        }
+        b.add(key(username));
+        if (b.isFull()) {
+            bits = null;
+        }
+    }
+
+    /**
+     * Called when inserting the username failed. Returns whether the table has it after all
+     * (created by another process since the filter was loaded), and if so adds it.
+     */
+    public boolean confirmTaken(String username) {
+        try {
+            if (existsInDatabase(username)) {
+                add(username);
+                return true;
+            }
+        } catch (SQLException e) {
+            System.out.println("Error occurred when checking username");
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Reloads the filter from the table, e.g. after other processes created accounts.
+     */
+    public synchronized void rebuild() throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            Bits b = new Bits(Math.max(MIN_CAPACITY, accounts.count(con) * 2));
+            accounts.forEachUsername(con, username -> b.add(key(username)));
+            bits = b;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public boolean isLoaded() {
+        return bits != null;
+    }
+
+    public int getUsernames() {
+        Bits b = bits;
+        return b == null ? 0 : b.count.get();
+    }
+
+    public int getCapacity() {
+        Bits b = bits;
+        return b == null ? 0 : b.capacity;
+    }
+
+    public long getMemoryBytes() {
+        Bits b = bits;
+        return b == null ? 0 : b.words.length() * 8L;
+    }
+
+    public int getHashes() {
+        Bits b = bits;
+        return b == null ? 0 : b.hashes;
+    }
+
+    /**
+     * The false positive rate expected at the current number of usernames.
+     */
+    public double getExpectedFalsePositiveRate() {
+        Bits b = bits;
+        if (b == null) {
+            return 0;
+        }
+        return Math.pow(1 - Math.exp(-(double) b.hashes * b.count.get() / b.size), b.hashes);
+    }
+
+    // lookups the filter answered without a query
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    public long getQueried() {
+        return queried.sum();
+    }
+
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    private Bits loaded() throws SQLException {
+        Bits b = bits;
+        if (b != null) {
+            return b;
+        }
+        synchronized (this) {
+            if (bits == null) {
+                rebuild();
+            }
+            return bits;
+        }
+    }
+
+    private boolean existsInDatabase(String username) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            return accounts.exists(con, username);
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // 64-bit FNV-1a of the lower-cased name, finished with the MurmurHash3 mixer
+    private static long key(String username) {
+        String s = username.toLowerCase(Locale.ROOT);
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * The bit array, sized for a number of usernames. Bits are set atomically so that concurrent
+     * adds never lose each other's bits.
+     */
+    private static class Bits {
+        private final int capacity;
+        private final long size;
+        private final int hashes;
+        private final AtomicLongArray words;
+        private final AtomicInteger count = new AtomicInteger();
+
+        Bits(int capacity) {
+            this.capacity = capacity;
+            double ln2 = Math.log(2);
+            long bitsNeeded = (long) Math.ceil(-capacity * Math.log(FALSE_POSITIVE_RATE) / (ln2 * ln2));
+            this.words = new AtomicLongArray((int) ((bitsNeeded + 63) / 64));
+            this.size = words.length() * 64L;
+            this.hashes = Math.max(1, (int) Math.round((double) size / capacity * ln2));
+        }
+
+        void add(long key) {
+            long h2 = mix(key ^ 0x9e3779b97f4a7c15L) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(key + i * h2, size);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long current;
+                while (((current = words.get(word)) & mask) == 0) {
+                    if (words.compareAndSet(word, current, current | mask)) {
+                        break;
+                    }
+                }
+            }
+            count.incrementAndGet();
+        }
+
+        boolean mightContain(long key) {
+            long h2 = mix(key ^ 0x9e3779b97f4a7c15L) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(key + i * h2, size);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean isFull() {
+            return count.get() > capacity;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package scheduler.db;
+
+import scheduler.metrics.CommandStats;
+import scheduler.metrics.Metrics;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs independent database lookups of one command at the same time, so the command waits about
+ * as long as the slowest of them rather than for their sum.
+ *
+ * supply() starts a lookup on a bounded pool of AsyncThreads (default 4) daemon threads and
+ * returns a CompletableFuture; await() and awaitAll() wait for results for at most
+ * AsyncTimeoutMs (default 30000) and rethrow the lookup's SQLException. When the pool and its
+ * queue are full the lookup runs on the caller's thread, so overload degrades to running in
+ * sequence. Lookups that would be answered from memory anyway should be run inline with
+ * supplyIf(false, ...): handing them to another thread only costs time.
+ *
+ * Cancelling a future (await() does so on a timeout or failure of a sibling) skips the lookup if
+ * it has not started and cancels its running statement with Statement.cancel() if it has. The
+ * statements a lookup prepares through track() also get AsyncTimeoutMs, rounded up to seconds,
+ * as their query timeout, so the database stops work nobody waits for any more. Threads are
+ * never interrupted: an interrupt closes the embedded database's files.
+ */
+public class AsyncExecutor {
+
+    private static final String THREADS_ENV = "AsyncThreads";
+    private static final String TIMEOUT_ENV = "AsyncTimeoutMs";
+    private static final int QUEUE_SIZE = 64;
+
+    private static final ThreadPoolExecutor executor = newExecutor(Settings.getInt(THREADS_ENV, 4));
+    private static final long timeoutMs = Settings.getInt(TIMEOUT_ENV, 30_000);
+
+    // the lookup running on this thread, whose statements track() registers
+    private static final ThreadLocal<Running> running = new ThreadLocal<>();
+
+    /**
+     * A database lookup that may fail with an SQLException.
+     */
+    @FunctionalInterface
+    public interface Lookup<T> {
+        T get() throws SQLException;
+    }
+
+    private AsyncExecutor() {
+    }
+
+    /**
+     * Starts the lookup on the pool. Its database work is charged to the calling command.
+     */
+    public static <T> CompletableFuture<T> supply(Lookup<T> lookup) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CommandStats command = Metrics.getInstance().current();
+        Running lookupRun = new Running();
+        future.whenComplete((value, error) -> {
+            if (error instanceof CancellationException) {
+                lookupRun.cancel();
+            }
+        });
+        executor.execute(() -> {
+            if (future.isDone()) {
+                return; // cancelled before it started
+            }
+            Metrics metrics = Metrics.getInstance();
+            CommandStats previous = metrics.current();
+            Running previousRun = running.get(); // set when the pool is full and this is the caller
+            metrics.attach(command);
+            running.set(lookupRun);
+            try {
+                future.complete(lookup.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            } finally {
+                lookupRun.finish();
+                running.set(previousRun);
+                metrics.attach(previous);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Registers a statement the current lookup is about to run, giving it the lookup timeout and
+     * cancelling it along with the lookup. Does nothing outside of supply().
+     */
+    public static <S extends Statement> S track(S statement) throws SQLException {
+        Running lookupRun = running.get();
+        if (lookupRun != null) {
+            lookupRun.add(statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Starts the lookup on the pool if async is true, or else runs it right away on this thread.
+     */
+    public static <T> CompletableFuture<T> supplyIf(boolean async, Lookup<T> lookup) {
+        if (async) {
+            return supply(lookup);
+        }
+        try {
+            return CompletableFuture.completedFuture(lookup.get());
+        } catch (SQLException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Waits for the lookup and returns its result. On a timeout or interrupt the lookup is
+     * cancelled.
+     */
+    public static <T> T await(CompletableFuture<T> future) throws SQLException {
+        awaitAll(future);
+        return future.join();
+    }
+
+    /**
+     * Waits for all the lookups. As soon as one fails, times out or the wait is interrupted, the
+     * others are cancelled and the failure is thrown.
+     */
+    public static void awaitAll(CompletableFuture<?>... futures) throws SQLException {
+        CompletableFuture<Void> all = CompletableFuture.allOf(futures);
+        for (CompletableFuture<?> future : futures) {
+            // fail fast: allOf() alone would wait for the slowest even after a failure
+            future.whenComplete((value, error) -> {
+                if (error != null) {
+                    all.completeExceptionally(error);
+                }
+            });
+        }
+        try {
+            all.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            cancelAll(futures);
+            throw new SQLTimeoutException("Lookups did not finish within " + timeoutMs + " ms");
+        } catch (InterruptedException e) {
+            cancelAll(futures);
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for lookups", e);
+        } catch (ExecutionException e) {
+            cancelAll(futures);
+            throw unwrap(e.getCause());
+        } catch (CancellationException e) {
+            cancelAll(futures);
+            throw new SQLException("Lookup cancelled", e);
+        }
+    }
+
+    private static void cancelAll(CompletableFuture<?>... futures) {
+        for (CompletableFuture<?> future : futures) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * The statements of one lookup run by supply().
+     */
+    private static final class Running {
+
+        private final List<Statement> statements = new ArrayList<>();
+        private boolean cancelled;
+        private boolean finished;
+
+        synchronized void add(Statement statement) throws SQLException {
+            if (cancelled) {
+                throw new SQLException("Lookup cancelled");
+            }
+            if (!statements.contains(statement)) {
+                statement.setQueryTimeout((int) Math.max(0, (timeoutMs + 999) / 1000));
+                statements.add(statement);
+            }
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (finished) {
+                return; // the statements may already run for someone else
+            }
+            for (Statement statement : statements) {
+                try {
+                    statement.cancel();
+                } catch (SQLException e) {
+                    // the lookup fails or finishes on its own
+                }
+            }
+        }
+
+        synchronized void finish() {
+            finished = true;
+            // cached statements are reused by later commands, which have no timeout
+            for (Statement statement : statements) {
+                try {
+                    statement.setQueryTimeout(0);
+                } catch (SQLException e) {
+                    // closed along with a broken connection
+                }
+            }
+        }
+    }
+
+    private static SQLException unwrap(Throwable cause) {
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof SQLException) {
+            return (SQLException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new SQLException(cause);
+    }
+
+    private static ThreadPoolExecutor newExecutor(int threads) {
+        int size = Math.max(1, threads);
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE_SIZE),
+                r -> {
+                    Thread t = new Thread(r, "async-lookup-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+}
@@ -0,0 +1,139 @@
+package scheduler.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+
+/**
+ * Where the scheduler keeps its data, chosen with the Backend setting:
+ *
+ *   sqlserver (default)  Azure SQL, from the Server, DBName, UserID and Password settings
+ *   embedded             an in-process H2 database at EmbeddedPath (default ./scheduler-db,
+ *                        or mem:name for one that lives only as long as the process); the
+ *                        schema is created on first start
+ *   jdbc                 any database at JdbcUrl, with JdbcDriver, UserID and Password
+ *
+ * Every setting is read from a system property first and then from the environment variable
+ * of the same name.
+ */
+public class Backend {
+
+    private final String driverName;
+    private final String url;
+    private final String user;
+    private final String password;
+    private final Dialect dialect;
+    private final boolean embedded;
+
+    private Backend(String driverName, String url, String user, String password, Dialect dialect, boolean embedded) {
+        this.driverName = driverName;
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.dialect = dialect;
+        this.embedded = embedded;
+    }
+
+    public static Backend fromSettings() {
+        String kind = setting("Backend", "sqlserver").toLowerCase(Locale.ROOT);
+        switch (kind) {
+            case "sqlserver":
+                return new Backend(Dialect.SQLSERVER.getDriverName(),
+                        "jdbc:sqlserver://" + setting("Server", null) +
+                                ".database.windows.net:1433;database=" + setting("DBName", null),
+                        setting("UserID", null), setting("Password", null), Dialect.SQLSERVER, false);
+            case "embedded":
+                return new Backend(Dialect.H2.getDriverName(), embeddedUrl(setting("EmbeddedPath", "./scheduler-db")),
+                        setting("UserID", "sa"), setting("Password", ""), Dialect.H2, true);
+            case "jdbc":
+                String url = setting("JdbcUrl", null);
+                if (url == null) {
+                    throw new IllegalStateException("Backend jdbc needs a JdbcUrl");
+                }
+                Dialect dialect = Dialect.fromUrl(url);
+                return new Backend(setting("JdbcDriver", dialect.getDriverName()), url,
+                        setting("UserID", null), setting("Password", null), dialect, false);
+            default:
+                throw new IllegalStateException("Unknown backend: " + kind);
+        }
+    }
+
+    private static String embeddedUrl(String path) {
+        String options = ";MODE=MSSQLServer";
+        if (path.startsWith("mem:")) {
+            // keep the database for as long as the process runs, not just while a connection is open
+            return "jdbc:h2:" + path + options + ";DB_CLOSE_DELAY=-1";
+        }
+        return "jdbc:h2:file:" + path + options;
+    }
+
+    // a system property wins over the environment variable of the same name
+    static String setting(String name, String defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            value = System.getenv(name);
+        }
+        return value == null ? defaultValue : value;
+    }
+
+    // Getters
+    public String getDriverName() {
+        return driverName;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public Dialect getDialect() {
+        return dialect;
+    }
+
+    public boolean isEmbedded() {
+        return embedded;
+    }
+
+    /**
+     * Creates the tables from the dialect's schema script unless they already exist.
+     */
+    public void installSchemaIfMissing(Connection con) throws SQLException {
+        DatabaseMetaData meta = con.getMetaData();
+        try (ResultSet tables = meta.getTables(null, null, "%", new String[]{"TABLE"})) {
+            while (tables.next()) {
+                if (tables.getString("TABLE_NAME").equalsIgnoreCase("Appointments")) {
+                    return;
+                }
+            }
+        }
+        String script;
+        try (InputStream in = Backend.class.getResourceAsStream(dialect.getSchemaResource())) {
+            if (in == null) {
+                throw new SQLException("Schema script " + dialect.getSchemaResource() + " is missing");
+            }
+            script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new SQLException("Could not read the schema script", e);
+        }
+        try (Statement statement = con.createStatement()) {
+            for (String sql : script.split(";")) {
+                if (!sql.isBlank()) {
+                    statement.execute(sql);
+                }
+            }
+        }
+    }
+}
@@ -1,37 +1,81 @@
 package scheduler.db;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
+/**
+ * A lightweight handle for one borrowed connection. All handles share a single
+ * ConnectionPool, so creating a ConnectionManager is cheap and createConnection()
+ * only opens a new socket when the pool has no idle connection to hand out.
+ */
 public class ConnectionManager {
 
-    private final String driverName = "com.microsoft.sqlserver.jdbc.SQLServerDriver";
-    private final String connectionUrl = "jdbc:sqlserver://" + System.getenv("Server") +
-            ".database.windows.net:1433;database=" + System.getenv("DBName");
-    private final String userName = System.getenv("UserID");
-    private final String userPass = System.getenv("Password");
+    private static volatile Backend backend = null;
+    private static volatile ConnectionPool pool = null;
 
     private Connection con = null;
 
     public ConnectionManager() {
-        try {
-            Class.forName(driverName);
-        } catch (ClassNotFoundException e) {
-            System.out.println(e.toString());
+    }
+
+    /**
+     * The database selected by the Backend setting; see {@link Backend}.
+     */
+    public static Backend getBackend() {
+        Backend b = backend;
+        if (b == null) {
+            synchronized (ConnectionManager.class) {
+                if (backend == null) {
+                    backend = Backend.fromSettings();
+                }
+                b = backend;
+            }
         }
+        return b;
     }
 
-    public Connection createConnection() {
-        try {
-            con = DriverManager.getConnection(connectionUrl, userName, userPass);
+    public static ConnectionPool getPool() {
+        ConnectionPool p = pool;
+        if (p == null) {
+            synchronized (ConnectionManager.class) {
+                if (pool == null) {
+                    pool = startPool(getBackend());
+                }
+                p = pool;
+            }
+        }
+        return p;
+    }
+
+    private static ConnectionPool startPool(Backend b) {
+        ConnectionPool p = ConnectionPool.getInstance(b);
+        try (Connection con = p.borrow()) {
+            if (b.isEmbedded()) {
+                // an embedded database starts out empty
+                b.installSchemaIfMissing(con);
+            }
+            new SchemaMigrator(b.getDialect()).migrate(con);
         } catch (SQLException e) {
+            System.out.println("Error occurred when preparing the database schema");
             e.printStackTrace();
         }
+        return p;
+    }
+
+    /**
+     * Borrows a connection from the pool. Fails with an SQLException, and never returns null,
+     * when the pool cannot hand one out in time.
+     */
+    public Connection createConnection() throws SQLException {
+        con = getPool().borrow();
         return con;
     }
 
+    // returns the connection to the pool
     public void closeConnection() {
+        if (this.con == null) {
+            return;
+        }
         try {
             this.con.close();
         } catch (SQLException e) {
@@ -0,0 +1,451 @@
+package scheduler.db;
+
+import scheduler.metrics.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A bounded pool of JDBC connections shared by every ConnectionManager in the process.
+ *
+ * Connections are opened once and handed out as proxies: calling close() on a borrowed
+ * connection returns it to the pool instead of closing the socket. Every borrow gets its own
+ * proxy, so a handle kept after close() cannot reach the connection once it is lent out again. Statements and result
+ * sets that the borrower forgot to close are closed (and counted) when the connection
+ * comes back. A background housekeeper evicts idle and expired connections, keeps the
+ * pool prewarmed, and, if PoolLeakThresholdMs is set, reports connections that have been held
+ * for longer than that together with where they were borrowed.
+ *
+ * All limits can be tuned through settings (see the constants below and Settings).
+ */
+public class ConnectionPool {
+
+    // settings used to size the pool
+    private static final String MAX_SIZE_ENV = "PoolMaxSize";
+    private static final String MIN_IDLE_ENV = "PoolMinIdle";
+    private static final String BORROW_TIMEOUT_ENV = "PoolBorrowTimeoutMs";
+    private static final String IDLE_TIMEOUT_ENV = "PoolIdleTimeoutMs";
+    private static final String MAX_LIFETIME_ENV = "PoolMaxLifetimeMs";
+    private static final String LEAK_THRESHOLD_ENV = "PoolLeakThresholdMs";
+    // 1 to count the rows every command reads; off by default because it wraps every statement
+    private static final String COUNT_ROWS_ENV = "MetricsCountRows";
+    private static final String STATEMENT_CACHE_SIZE_ENV = "StatementCacheSize";
+
+    // connections idle for less than this are handed out without a validation round trip
+    private static final long VALIDATION_SKIP_MS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long HOUSEKEEPING_PERIOD_MS = 30_000;
+
+    private static ConnectionPool instance = null;
+
+    private final Backend backend;
+
+    private final int maxSize;
+    private final int minIdle;
+    private final long borrowTimeoutMs;
+    private final long idleTimeoutMs;
+    private final long maxLifetimeMs;
+    // 0 turns leak tracking off; it records a stack trace on every borrow
+    private final long leakThresholdMs;
+    private final boolean countRows;
+    private final int statementCacheSize;
+
+    // a permit is held for every connection that is borrowed, so the pool never grows past maxSize
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService housekeeper;
+    // set by shutdown(); no connection is lent out or kept idle after that
+    private volatile boolean closed;
+
+    // statistics
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong closedCount = new AtomicLong();
+    private final AtomicLong leakedStatementCount = new AtomicLong();
+    private final AtomicLong leakWarningCount = new AtomicLong();
+    private final AtomicInteger peakActive = new AtomicInteger();
+
+    // package-private so tests can run a pool of their own besides the shared one
+    ConnectionPool(Backend backend) {
+        this.backend = backend;
+        this.maxSize = Math.max(1, Settings.getInt(MAX_SIZE_ENV, 10));
+        this.minIdle = Math.min(maxSize, Math.max(0, Settings.getInt(MIN_IDLE_ENV, 2)));
+        this.borrowTimeoutMs = Settings.getInt(BORROW_TIMEOUT_ENV, 30_000);
+        this.idleTimeoutMs = Settings.getInt(IDLE_TIMEOUT_ENV, 600_000);
+        this.maxLifetimeMs = Settings.getInt(MAX_LIFETIME_ENV, 1_800_000);
+        this.leakThresholdMs = Math.max(0, Settings.getInt(LEAK_THRESHOLD_ENV, 0));
+        this.countRows = Settings.getInt(COUNT_ROWS_ENV, 0) == 1;
+        this.statementCacheSize = Math.max(0, Settings.getInt(STATEMENT_CACHE_SIZE_ENV, 64));
+        this.permits = new Semaphore(maxSize, true);
+
+        try {
+            Class.forName(backend.getDriverName());
+        } catch (ClassNotFoundException e) {
+            System.out.println(e.toString());
+        }
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        prewarm();
+        housekeeper.scheduleWithFixedDelay(this::housekeep,
+                HOUSEKEEPING_PERIOD_MS, HOUSEKEEPING_PERIOD_MS, TimeUnit.MILLISECONDS);
+    }
+
+    static synchronized ConnectionPool getInstance(Backend backend) {
+        if (instance == null) {
+            instance = new ConnectionPool(backend);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the shared pool, or null if no connection has been requested yet.
+     */
+    public static synchronized ConnectionPool getInstanceIfStarted() {
+        return instance;
+    }
+
+    /**
+     * Borrows a connection, waiting at most the configured borrow timeout for one to free up.
+     * The returned connection must be closed to give it back. Fails once the pool is shut down.
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("The connection pool has been shut down");
+        }
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection");
+        }
+        long waited = System.nanoTime() - start;
+        if (!acquired) {
+            timeoutCount.incrementAndGet();
+            throw new SQLException("Timed out after " + borrowTimeoutMs + " ms waiting for a connection");
+        }
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        borrowCount.incrementAndGet();
+        Metrics.onConnection();
+
+        try {
+            PooledConnection pc = takeValidIdle();
+            if (pc == null) {
+                pc = open();
+            }
+            pc.borrowedAt = System.currentTimeMillis();
+            if (leakThresholdMs > 0) {
+                pc.borrowSite = new Throwable("Connection borrowed here");
+            }
+            Lease lease = new Lease(pc);
+            pc.lease.set(lease);
+            borrowed.add(pc);
+            peakActive.accumulateAndGet(borrowed.size(), Math::max);
+            return lease.proxy;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection takeValidIdle() {
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            long now = System.currentTimeMillis();
+            if (now - pc.createdAt > maxLifetimeMs) {
+                destroy(pc);
+                continue;
+            }
+            if (now - pc.lastReturnedAt > VALIDATION_SKIP_MS && !isAlive(pc)) {
+                destroy(pc);
+                continue;
+            }
+            return pc;
+        }
+        return null;
+    }
+
+    private boolean isAlive(PooledConnection pc) {
+        try {
+            return pc.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection physical = DriverManager.getConnection(backend.getUrl(), backend.getUser(), backend.getPassword());
+        createdCount.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private void destroy(PooledConnection pc) {
+        // closing the physical connection closes its cached statements too
+        pc.cache.clear();
+        try {
+            pc.physical.close();
+        } catch (SQLException e) {
+            // the connection is being discarded anyway
+        }
+        closedCount.incrementAndGet();
+    }
+
+    // called by the proxy when the borrower closes the connection
+    private void giveBack(PooledConnection pc, Lease lease) {
+        // only the current borrow's handle can return the connection, and only once
+        if (!pc.lease.compareAndSet(lease, null) || !borrowed.remove(pc)) {
+            return;
+        }
+        boolean reusable = true;
+        int leaked = pc.closeOpenStatements();
+        if (leaked > 0) {
+            leakedStatementCount.addAndGet(leaked);
+        }
+        try {
+            if (!pc.physical.getAutoCommit()) {
+                pc.physical.rollback();
+                pc.physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            reusable = false;
+        }
+        pc.lastReturnedAt = System.currentTimeMillis();
+        pc.borrowSite = null;
+        if (!closed && reusable && pc.lastReturnedAt - pc.createdAt <= maxLifetimeMs) {
+            idle.offerFirst(pc);
+            // shutdown() may have drained the idle list just before the offer
+            if (closed && idle.remove(pc)) {
+                destroy(pc);
+            }
+        } else {
+            destroy(pc);
+        }
+        permits.release();
+    }
+
+    private void prewarm() {
+        while (!closed && idle.size() + borrowed.size() < minIdle) {
+            try {
+                PooledConnection pc = open();
+                pc.lastReturnedAt = System.currentTimeMillis();
+                idle.offerLast(pc);
+                if (closed && idle.remove(pc)) {
+                    destroy(pc);
+                }
+            } catch (SQLException e) {
+                System.out.println("Could not prewarm the connection pool: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+
+        // evict connections that sat idle too long or outlived their max lifetime
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        int idleCount = idle.size();
+        while (it.hasNext()) {
+            PooledConnection pc = it.next();
+            boolean expired = now - pc.createdAt > maxLifetimeMs;
+            boolean stale = idleCount > minIdle && now - pc.lastReturnedAt > idleTimeoutMs;
+            if ((expired || stale) && idle.remove(pc)) {
+                idleCount--;
+                destroy(pc);
+            }
+        }
+        prewarm();
+
+        // report connections that have been borrowed for longer than the leak threshold
+        if (leakThresholdMs == 0) {
+            return;
+        }
+        for (PooledConnection pc : borrowed) {
+            Throwable site = pc.borrowSite;
+            if (site != null && now - pc.borrowedAt > leakThresholdMs && !pc.leakReported) {
+                pc.leakReported = true;
+                leakWarningCount.incrementAndGet();
+                System.out.println("Possible connection leak: held for " + (now - pc.borrowedAt) + " ms");
+                site.printStackTrace(System.out);
+            }
+        }
+    }
+
+    /**
+     * Closes every idle connection and stops the housekeeper. Borrowed connections are
+     * closed as they are returned, and borrow() fails from now on.
+     */
+    public void shutdown() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            destroy(pc);
+        }
+    }
+
+    public PoolStats getStats() {
+        return new PoolStats(maxSize, borrowed.size(), idle.size(), peakActive.get(),
+                borrowCount.get(), totalWaitNanos.get(), maxWaitNanos.get(), timeoutCount.get(),
+                createdCount.get(), closedCount.get(), leakedStatementCount.get(), leakWarningCount.get());
+    }
+
+    /**
+     * A physical connection plus the bookkeeping the pool needs for it.
+     */
+    private class PooledConnection implements StatementCache {
+        private final Connection physical;
+        private final long createdAt;
+        // the borrow currently holding the connection, or null while it is idle
+        private final AtomicReference<Lease> lease = new AtomicReference<>();
+        private final List<Statement> statements = new ArrayList<>();
+        // statements kept open across borrows, least recently used first
+        private final Map<String, PreparedStatement> cache = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= statementCacheSize) {
+                    return false;
+                }
+                try {
+                    eldest.getValue().close();
+                } catch (SQLException e) {
+                    // it is being dropped anyway
+                }
+                return true;
+            }
+        };
+        private volatile long lastReturnedAt;
+        private volatile long borrowedAt;
+        private volatile Throwable borrowSite;
+        private volatile boolean leakReported;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.createdAt = System.currentTimeMillis();
+        }
+
+        @Override
+        public PreparedStatement prepareCached(String sql) throws SQLException {
+            // charged to the command running on this thread, like any other statement
+            Metrics.onStatement();
+            PreparedStatement statement = cache.get(sql);
+            if (statement == null || statement.isClosed()) {
+                statement = physical.prepareStatement(sql);
+                if (countRows) {
+                    statement = (PreparedStatement) InstrumentedStatement.wrap(statement);
+                }
+                cache.put(sql, statement);
+            }
+            return statement;
+        }
+
+        // closes statements (and with them their result sets) left open by the borrower
+        int closeOpenStatements() {
+            int leaked = 0;
+            synchronized (statements) {
+                for (Statement s : statements) {
+                    try {
+                        if (!s.isClosed()) {
+                            leaked++;
+                            s.close();
+                        }
+                    } catch (SQLException e) {
+                        // nothing more we can do for this statement
+                    }
+                }
+                statements.clear();
+            }
+            leakReported = false;
+            return leaked;
+        }
+    }
+
+    /**
+     * The handle for one borrow of a connection. Once the borrow has ended, close() does
+     * nothing and every other call fails.
+     */
+    private class Lease implements InvocationHandler {
+        private final PooledConnection pc;
+        private final Connection proxy;
+
+        Lease(PooledConnection pc) {
+            this.pc = pc;
+            this.proxy = (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class, StatementCache.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                giveBack(pc, this);
+                return null;
+            }
+            boolean current = pc.lease.get() == this;
+            if (name.equals("isClosed")) {
+                return !current || pc.physical.isClosed();
+            }
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            if (!current) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if (name.equals("prepareCached")) {
+                return pc.prepareCached((String) args[0]);
+            }
+            Object result;
+            try {
+                result = method.invoke(pc.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Statement) {
+                synchronized (pc.statements) {
+                    pc.statements.add((Statement) result);
+                }
+                // charged to the command running on this thread
+                Metrics.onStatement();
+                if (countRows) {
+                    return InstrumentedStatement.wrap((Statement) result);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package scheduler.db;
+
+import java.sql.SQLException;
+import java.util.Locale;
+
+/**
+ * The SQL flavours the scheduler can run on. Queries are written so that they work on all of
+ * them; what differs is how errors are reported and which schema scripts to apply.
+ */
+public enum Dialect {
+    SQLSERVER("com.microsoft.sqlserver.jdbc.SQLServerDriver"),
+    // H2 runs in MSSQLServer compatibility mode, so it shares the SQL Server schema
+    H2("org.h2.Driver");
+
+    private final String driverName;
+
+    Dialect(String driverName) {
+        this.driverName = driverName;
+    }
+
+    public String getDriverName() {
+        return driverName;
+    }
+
+    public String getSchemaResource() {
+        return "/create.sql";
+    }
+
+    public String getMigrationDirectory() {
+        return "/migrations/" + name().toLowerCase(Locale.ROOT) + "/";
+    }
+
+    public boolean isUniqueViolation(SQLException e) {
+        switch (this) {
+            case SQLSERVER:
+                return e.getErrorCode() == 2627 || e.getErrorCode() == 2601;
+            case H2:
+                return "23505".equals(e.getSQLState());
+            default:
+                return false;
+        }
+    }
+
+    public boolean isSerializationFailure(SQLException e) {
+        // SQL Server reports deadlock victims (error 1205) with this state as well
+        return "40001".equals(e.getSQLState());
+    }
+
+    public static Dialect fromUrl(String url) {
+        return url != null && url.startsWith("jdbc:h2:") ? H2 : SQLSERVER;
+    }
+}
@@ -0,0 +1,193 @@
+package scheduler.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Hands out ids from blocks reserved in the Sequences table (hi/lo allocation).
+ *
+ * Reserving a block bumps the stored NextValue by the block size in one statement, so ids
+ * are never reused, even across restarts or between processes; ids left unused in a block
+ * when the process exits are simply skipped. The next block is reserved in the background
+ * once half of the current one is used, so callers normally get an id without any database
+ * round trip.
+ */
+public class IdAllocator {
+
+    private static final String APPOINTMENTS = "Appointments";
+    private static final String BLOCK_SIZE_ENV = "AppointmentIdBlockSize";
+
+    private static final String WAITLIST = "Waitlist";
+    // joining the waitlist is rare next to booking, so small blocks waste fewer ids
+    private static final int WAITLIST_BLOCK_SIZE = 10;
+
+    private static IdAllocator appointments = null;
+    private static IdAllocator waitlist = null;
+
+    private final String sequenceName;
+    private final String seedQuery;
+    private final int blockSize;
+    private final ExecutorService prefetcher;
+
+    // ids in [next, end) are ours to hand out
+    private int next = 0;
+    private int end = 0;
+    private CompletableFuture<Integer> pending = null;
+
+    /**
+     * @param seedQuery returns the first id to use when the sequence does not exist yet
+     */
+    public IdAllocator(String sequenceName, String seedQuery, int blockSize) {
+        this.sequenceName = sequenceName;
+        this.seedQuery = seedQuery;
+        this.blockSize = Math.max(1, blockSize);
+        this.prefetcher = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "id-allocator-" + sequenceName);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * The allocator for Appointments.aid. Its block size comes from AppointmentIdBlockSize.
+     */
+    public static synchronized IdAllocator forAppointments() {
+        if (appointments == null) {
+            int blockSize = Settings.getInt(BLOCK_SIZE_ENV, 50);
+            appointments = new IdAllocator(APPOINTMENTS,
+                    "SELECT COALESCE(MAX(aid), 0) + 1 AS seed FROM Appointments", blockSize);
+            appointments.prefetch();
+        }
+        return appointments;
+    }
+
+    /**
+     * The allocator for Waitlist.wid.
+     */
+    public static synchronized IdAllocator forWaitlist() {
+        if (waitlist == null) {
+            waitlist = new IdAllocator(WAITLIST, "SELECT COALESCE(MAX(wid), 0) + 1 AS seed FROM Waitlist",
+                    WAITLIST_BLOCK_SIZE);
+        }
+        return waitlist;
+    }
+
+    public synchronized int nextId() throws SQLException {
+        if (next == end) {
+            if (pending == null) {
+                prefetch();
+            }
+            int start = awaitPending();
+            next = start;
+            end = start + blockSize;
+        }
+        int id = next++;
+        if (pending == null && end - next <= blockSize / 2) {
+            prefetch();
+        }
+        return id;
+    }
+
+    private void prefetch() {
+        pending = CompletableFuture.supplyAsync(() -> {
+            try {
+                return reserveBlock();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }, prefetcher);
+    }
+
+    private int awaitPending() throws SQLException {
+        CompletableFuture<Integer> block = pending;
+        pending = null;
+        try {
+            return block.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while reserving ids");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IllegalStateException && cause.getCause() instanceof SQLException) {
+                throw (SQLException) cause.getCause();
+            }
+            throw new SQLException("Could not reserve ids", cause);
+        }
+    }
+
+    // returns the first id of a freshly reserved block
+    private int reserveBlock() throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            con.setAutoCommit(false);
+            try {
+                int start;
+                if (bump(con)) {
+                    start = readNextValue(con) - blockSize;
+                } else {
+                    start = seed(con);
+                }
+                con.commit();
+                return start;
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    private boolean bump(Connection con) throws SQLException {
+        String bump = "UPDATE Sequences SET NextValue = NextValue + ? WHERE Name = ?";
+        try (PreparedStatement statement = con.prepareStatement(bump)) {
+            statement.setInt(1, blockSize);
+            statement.setString(2, sequenceName);
+            return statement.executeUpdate() == 1;
+        }
+    }
+
+    private int readNextValue(Connection con) throws SQLException {
+        String select = "SELECT NextValue FROM Sequences WHERE Name = ?";
+        try (PreparedStatement statement = con.prepareStatement(select)) {
+            statement.setString(1, sequenceName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getInt("NextValue");
+            }
+        }
+    }
+
+    // creates the sequence past the ids already in use and takes its first block
+    private int seed(Connection con) throws SQLException {
+        int start;
+        try (PreparedStatement statement = con.prepareStatement(seedQuery);
+             ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            start = resultSet.getInt("seed");
+        }
+        String insert = "INSERT INTO Sequences (Name, NextValue) VALUES (?, ?)";
+        try (PreparedStatement statement = con.prepareStatement(insert)) {
+            statement.setString(1, sequenceName);
+            statement.setInt(2, start + blockSize);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            // another process created the sequence first; take a block from it instead
+            con.rollback();
+            if (!bump(con)) {
+                throw e;
+            }
+            return readNextValue(con) - blockSize;
+        }
+        return start;
+    }
+}
@@ -0,0 +1,80 @@
+package scheduler.db;
+
+import scheduler.metrics.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Wraps the statements handed out by pooled connections so that every row read is reported to
+ * {@link Metrics}. Everything else goes straight to the driver. Only used when MetricsCountRows
+ * is 1: going through a proxy for every call costs about a fifth of the throughput of the
+ * embedded database.
+ */
+class InstrumentedStatement implements InvocationHandler {
+
+    private final Statement statement;
+
+    private InstrumentedStatement(Statement statement) {
+        this.statement = statement;
+    }
+
+    static Statement wrap(Statement statement) {
+        Class<?> type = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class
+                : Statement.class;
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                new Class<?>[]{type}, new InstrumentedStatement(statement));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        Object result;
+        try {
+            result = method.invoke(statement, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+        if (result instanceof ResultSet && (name.equals("executeQuery") || name.equals("getResultSet"))) {
+            return RowCounter.wrap((ResultSet) result);
+        }
+        return result;
+    }
+
+    /**
+     * Reports every row a result set moves onto.
+     */
+    private static class RowCounter implements InvocationHandler {
+        private final ResultSet resultSet;
+
+        private RowCounter(ResultSet resultSet) {
+            this.resultSet = resultSet;
+        }
+
+        static ResultSet wrap(ResultSet resultSet) {
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                    new Class<?>[]{ResultSet.class}, new RowCounter(resultSet));
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result;
+            try {
+                result = method.invoke(resultSet, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (Boolean.TRUE.equals(result) && method.getName().equals("next")) {
+                Metrics.onRow();
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package scheduler.db;
+
+/**
+ * A point-in-time snapshot of the connection pool's counters.
+ */
+public class PoolStats {
+    private final int maxSize;
+    private final int active;
+    private final int idle;
+    private final int peakActive;
+    private final long borrows;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+    private final long timeouts;
+    private final long created;
+    private final long closed;
+    private final long leakedStatements;
+    private final long leakWarnings;
+
+    PoolStats(int maxSize, int active, int idle, int peakActive, long borrows, long totalWaitNanos,
+              long maxWaitNanos, long timeouts, long created, long closed, long leakedStatements,
+              long leakWarnings) {
+        this.maxSize = maxSize;
+        this.active = active;
+        this.idle = idle;
+        this.peakActive = peakActive;
+        this.borrows = borrows;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+        this.timeouts = timeouts;
+        this.created = created;
+        this.closed = closed;
+        this.leakedStatements = leakedStatements;
+        this.leakWarnings = leakWarnings;
+    }
+
+    // Getters
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public int getPeakActive() {
+        return peakActive;
+    }
+
+    public long getBorrows() {
+        return borrows;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getClosed() {
+        return closed;
+    }
+
+    public long getLeakedStatements() {
+        return leakedStatements;
+    }
+
+    public long getLeakWarnings() {
+        return leakWarnings;
+    }
+
+    // fraction of the pool that is currently borrowed
+    public double getUtilization() {
+        return (double) active / maxSize;
+    }
+
+    public double getAverageWaitMillis() {
+        return borrows == 0 ? 0 : totalWaitNanos / 1_000_000.0 / borrows;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Pool: %d/%d active (%.0f%% utilization, peak %d), %d idle%n"
+                        + "Borrows: %d, avg wait %.2f ms, max wait %.2f ms, timeouts %d%n"
+                        + "Connections opened: %d, closed: %d%n"
+                        + "Leaked statements closed: %d, leak warnings: %d",
+                active, maxSize, getUtilization() * 100, peakActive, idle,
+                borrows, getAverageWaitMillis(), getMaxWaitMillis(), timeouts,
+                created, closed, leakedStatements, leakWarnings);
+    }
+}
@@ -0,0 +1,116 @@
+package scheduler.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+/**
+ * Brings the schema up to date at startup.
+ *
+ * Migrations are numbered scripts on the classpath under migrations/<dialect>/ (V1.sql,
+ * V2.sql, ...); the first line of each is a "--" comment describing it. Versions that have been
+ * applied are recorded in the SchemaVersion table, and every script with a higher number is
+ * applied in order, each together with its SchemaVersion row. The base tables themselves come
+ * from create.sql.
+ */
+public class SchemaMigrator {
+
+    private final Dialect dialect;
+
+    public SchemaMigrator(Dialect dialect) {
+        this.dialect = dialect;
+    }
+
+    /**
+     * Applies every pending migration and returns how many were applied.
+     */
+    public int migrate(Connection con) throws SQLException {
+        createVersionTableIfMissing(con);
+        int current = currentVersion(con);
+        int applied = 0;
+        String script;
+        for (int version = current + 1; (script = load(version)) != null; version++) {
+            apply(con, version, script);
+            applied++;
+        }
+        return applied;
+    }
+
+    public int currentVersion(Connection con) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement("SELECT MAX(Version) AS v FROM SchemaVersion");
+             ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            return resultSet.getInt("v");
+        }
+    }
+
+    private void createVersionTableIfMissing(Connection con) throws SQLException {
+        DatabaseMetaData meta = con.getMetaData();
+        try (ResultSet tables = meta.getTables(null, null, "%", new String[]{"TABLE"})) {
+            while (tables.next()) {
+                if (tables.getString("TABLE_NAME").equalsIgnoreCase("SchemaVersion")) {
+                    return;
+                }
+            }
+        }
+        try (Statement statement = con.createStatement()) {
+            statement.execute("CREATE TABLE SchemaVersion (" +
+                    "Version int, " +
+                    "Description varchar(255), " +
+                    "AppliedAt datetime, " +
+                    "PRIMARY KEY (Version))");
+        }
+    }
+
+    private void apply(Connection con, int version, String script) throws SQLException {
+        String description = describe(script);
+        con.setAutoCommit(false);
+        try {
+            try (Statement statement = con.createStatement()) {
+                for (String sql : script.split(";")) {
+                    if (!sql.isBlank()) {
+                        statement.execute(sql);
+                    }
+                }
+            }
+            String record = "INSERT INTO SchemaVersion (Version, Description, AppliedAt) VALUES (?, ?, ?)";
+            try (PreparedStatement statement = con.prepareStatement(record)) {
+                statement.setInt(1, version);
+                statement.setString(2, description);
+                statement.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+                statement.executeUpdate();
+            }
+            con.commit();
+            System.out.println("Applied schema migration V" + version + ": " + description);
+        } catch (SQLException e) {
+            con.rollback();
+            throw new SQLException("Schema migration V" + version + " failed: " + e.getMessage(), e);
+        } finally {
+            con.setAutoCommit(true);
+        }
+    }
+
+    private String load(int version) throws SQLException {
+        String resource = dialect.getMigrationDirectory() + "V" + version + ".sql";
+        try (InputStream in = SchemaMigrator.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                return null;
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new SQLException("Could not read " + resource, e);
+        }
+    }
+
+    private static String describe(String script) {
+        String first = script.lines().findFirst().orElse("").trim();
+        return first.startsWith("--") ? first.substring(2).trim() : "";
+    }
+}
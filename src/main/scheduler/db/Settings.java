@@ -0,0 +1,53 @@
+package scheduler.db;
+
+/**
+ * Reads the scheduler's tuning settings. Like the Backend settings, each one is read from a
+ * system property first and then from the environment variable of the same name, so
+ * -DSlotMinutes=30 and SlotMinutes=30 do the same. A value that cannot be used is reported and
+ * the default is used instead.
+ */
+public final class Settings {
+
+    private Settings() {
+    }
+
+    /**
+     * The setting's value, or defaultValue if it is not set or empty.
+     */
+    public static String get(String name, String defaultValue) {
+        String value = Backend.setting(name, null);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    public static int getInt(String name, int defaultValue) {
+        return getInt(name, defaultValue, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The setting as a number from min to max, inclusive, or defaultValue if it is not set or
+     * is not such a number.
+     */
+    public static int getInt(String name, int defaultValue, int min, int max) {
+        String value = get(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= min && parsed <= max) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        invalid(name, value);
+        return defaultValue;
+    }
+
+    /**
+     * Reports a value the caller could not use, e.g. an unknown name.
+     */
+    public static void invalid(String name, String value) {
+        System.out.println("Ignoring invalid value for " + name + ": " + value);
+    }
+}
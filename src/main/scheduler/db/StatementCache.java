@@ -0,0 +1,18 @@
+package scheduler.db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Implemented by the connections the pool hands out. Statements prepared through it stay open
+ * for as long as the physical connection does, so each SQL string is parsed once per connection
+ * instead of once per command.
+ */
+public interface StatementCache {
+
+    /**
+     * A prepared statement for the SQL, reused across borrows of this connection. The caller
+     * must close the result sets it opens, but not the statement.
+     */
+    PreparedStatement prepareCached(String sql) throws SQLException;
+}
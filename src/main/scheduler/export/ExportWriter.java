@@ -0,0 +1,170 @@
+package scheduler.export;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes exported rows to a file as CSV (a header line, then one line per row) or JSON Lines
+ * (one object per row), picked by the file name: .csv or .jsonl, optionally followed by .gz to
+ * compress the file with gzip.
+ *
+ * Rows are written through a large buffer, so the disk sees few big writes. Dates are written
+ * as yyyy-mm-dd and numbers as they are.
+ */
+public abstract class ExportWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    protected final Writer writer;
+    protected final List<String> columns;
+
+    private ExportWriter(Writer writer, List<String> columns) {
+        this.writer = writer;
+        this.columns = columns;
+    }
+
+    /**
+     * Opens the file, replacing it if it exists. Throws IllegalArgumentException if the name
+     * does not end in .csv, .jsonl, .csv.gz or .jsonl.gz.
+     */
+    public static ExportWriter open(Path file, List<String> columns) throws IOException {
+        String name = file.getFileName().toString();
+        boolean gzip = name.endsWith(".gz");
+        if (gzip) {
+            name = name.substring(0, name.length() - 3);
+        }
+        boolean csv = name.endsWith(".csv");
+        if (!csv && !name.endsWith(".jsonl")) {
+            throw new IllegalArgumentException("Not a .csv or .jsonl file: " + file);
+        }
+        OutputStream stream = Files.newOutputStream(file);
+        Writer writer;
+        try {
+            if (gzip) {
+                stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+            }
+            writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        } catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+        ExportWriter exportWriter = csv ? new CsvWriter(writer, columns) : new JsonLinesWriter(writer, columns);
+        try {
+            exportWriter.begin();
+        } catch (IOException e) {
+            exportWriter.close();
+            throw e;
+        }
+        return exportWriter;
+    }
+
+    /**
+     * Writes one row, with a value per column.
+     */
+    public abstract void write(Object[] row) throws IOException;
+
+    // written before the first row
+    void begin() throws IOException {
+    }
+
+    @Override
+    public void close() throws IOException {
+        // also finishes the gzip stream
+        writer.close();
+    }
+
+    private static class CsvWriter extends ExportWriter {
+
+        CsvWriter(Writer writer, List<String> columns) {
+            super(writer, columns);
+        }
+
+        @Override
+        void begin() throws IOException {
+            writer.write(String.join(",", columns));
+            writer.write('\n');
+        }
+
+        @Override
+        public void write(Object[] row) throws IOException {
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                if (row[i] != null) {
+                    writeField(row[i].toString());
+                }
+            }
+            writer.write('\n');
+        }
+
+        // quoted only when it has to be, with quotes doubled
+        private void writeField(String value) throws IOException {
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+
+    private static class JsonLinesWriter extends ExportWriter {
+
+        JsonLinesWriter(Writer writer, List<String> columns) {
+            super(writer, columns);
+        }
+
+        @Override
+        public void write(Object[] row) throws IOException {
+            writer.write('{');
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeString(columns.get(i));
+                writer.write(':');
+                Object value = row[i];
+                if (value == null) {
+                    writer.write("null");
+                } else if (value instanceof Number) {
+                    writer.write(value.toString());
+                } else {
+                    writeString(value.toString());
+                }
+            }
+            writer.write("}\n");
+        }
+
+        private void writeString(String value) throws IOException {
+            writer.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    writer.write('\\');
+                    writer.write(c);
+                } else if (c < 0x20) {
+                    writer.write(String.format("\\u%04x", (int) c));
+                } else {
+                    writer.write(c);
+                }
+            }
+            writer.write('"');
+        }
+    }
+}
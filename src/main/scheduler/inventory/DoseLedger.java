@@ -0,0 +1,238 @@
+package scheduler.inventory;
+
+import scheduler.db.ConnectionManager;
+import scheduler.db.Settings;
+import scheduler.model.Vaccine;
+import scheduler.repository.VaccineRepository;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out vaccine doses from an in-process reserve instead of touching the Vaccines row for
+ * every booking.
+ *
+ * For each vaccine the ledger leases a block of doses from the database with one guarded
+ * decrement and keeps them in a set of striped counters, so concurrent bookings take doses from
+ * different stripes without contending on one counter or one row. Doses given back (a failed
+ * reservation, a cancellation) go into the stripes as well. Whatever is held locally is returned
+ * to the database as one net delta on every flush, which runs periodically and on shutdown.
+ *
+ * The lease size bounds how many doses the process can hand out between two database updates,
+ * and therefore how far the stored Doses can lag behind what is really left. It is read from
+ * the DoseLeaseSize setting; a lease size of 1 disables local handout.
+ */
+public class DoseLedger {
+
+    public enum Take {
+        TAKEN,
+        OUT_OF_STOCK,
+        NO_SUCH_VACCINE
+    }
+
+    private static final String LEASE_SIZE_ENV = "DoseLeaseSize";
+    private static final String FLUSH_INTERVAL_ENV = "DoseFlushIntervalMs";
+    private static final int STRIPES = Math.max(2, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) * 2);
+
+    private static DoseLedger instance = null;
+
+    private final int leaseSize;
+    private final Map<String, DoseCounter> counters = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+    private final VaccineRepository vaccines = new VaccineRepository();
+
+    private DoseLedger(int leaseSize, long flushIntervalMs) {
+        this.leaseSize = Math.max(1, leaseSize);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "dose-ledger-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized DoseLedger getInstance() {
+        if (instance == null) {
+            instance = new DoseLedger(Settings.getInt(LEASE_SIZE_ENV, 10), Settings.getInt(FLUSH_INTERVAL_ENV, 5_000));
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the ledger, or null if nothing has used it yet.
+     */
+    public static synchronized DoseLedger getInstanceIfStarted() {
+        return instance;
+    }
+
+    /**
+     * Takes one dose of the vaccine. Only goes to the database when the local reserve is empty.
+     */
+    public Take take(String vaccineName) throws SQLException {
+        DoseCounter counter = counters.computeIfAbsent(vaccineName, DoseCounter::new);
+        if (counter.tryTake()) {
+            return Take.TAKEN;
+        }
+        synchronized (counter) {
+            // another thread may have refilled while we waited
+            if (counter.tryTake()) {
+                return Take.TAKEN;
+            }
+            int leased = lease(vaccineName);
+            if (leased < 0) {
+                return Take.NO_SUCH_VACCINE;
+            }
+            if (leased == 0) {
+                return Take.OUT_OF_STOCK;
+            }
+            // keep one of the leased doses for this caller
+            counter.put(leased - 1);
+            return Take.TAKEN;
+        }
+    }
+
+    /**
+     * Gives doses back to the local reserve; they reach the database on the next flush.
+     */
+    public void giveBack(String vaccineName, int doses) {
+        counters.computeIfAbsent(vaccineName, DoseCounter::new).put(doses);
+    }
+
+    /**
+     * Doses of the vaccine that are held by this process and not yet visible in the database.
+     */
+    public int held(String vaccineName) {
+        DoseCounter counter = counters.get(vaccineName);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Returns every locally held dose to the database, one statement per vaccine.
+     */
+    public void flush() throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            for (DoseCounter counter : counters.values()) {
+                int net;
+                synchronized (counter) {
+                    net = counter.drain();
+                }
+                if (net == 0) {
+                    continue;
+                }
+                try {
+                    vaccines.applyDelta(con, counter.vaccineName, net);
+                    VaccineCache.invalidateIfStarted(counter.vaccineName);
+                } catch (SQLException e) {
+                    // keep the doses so the next flush can try again
+                    counter.put(net);
+                    throw e;
+                }
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    /**
+     * Flushes and stops the periodic flusher.
+     */
+    public void shutdown() {
+        flusher.shutdownNow();
+        flushQuietly();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            System.out.println("Error occurred when flushing doses");
+            e.printStackTrace();
+        }
+    }
+
+    // moves up to leaseSize doses out of the database; returns -1 if the vaccine does not exist
+    private int lease(String vaccineName) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            while (true) {
+                Vaccine vaccine = vaccines.find(con, vaccineName);
+                if (vaccine == null) {
+                    return -1;
+                }
+                int stored = vaccine.getAvailableDoses();
+                int wanted = Math.min(stored, leaseSize);
+                if (wanted <= 0) {
+                    return 0;
+                }
+                // the guard fails only if someone else took doses in between; read again
+                if (vaccines.applyDelta(con, vaccineName, -wanted)) {
+                    VaccineCache.invalidateIfStarted(vaccineName);
+                    return wanted;
+                }
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    /**
+     * The locally held doses of one vaccine, spread over several counters.
+     */
+    private static class DoseCounter {
+        private final String vaccineName;
+        private final AtomicInteger[] stripes = new AtomicInteger[STRIPES];
+
+        DoseCounter(String vaccineName) {
+            this.vaccineName = vaccineName;
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new AtomicInteger();
+            }
+        }
+
+        boolean tryTake() {
+            int start = ThreadLocalRandom.current().nextInt(STRIPES);
+            for (int i = 0; i < STRIPES; i++) {
+                AtomicInteger stripe = stripes[(start + i) & (STRIPES - 1)];
+                int current;
+                while ((current = stripe.get()) > 0) {
+                    if (stripe.compareAndSet(current, current - 1)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        void put(int doses) {
+            if (doses != 0) {
+                stripes[ThreadLocalRandom.current().nextInt(STRIPES)].addAndGet(doses);
+            }
+        }
+
+        int sum() {
+            int sum = 0;
+            for (AtomicInteger stripe : stripes) {
+                sum += stripe.get();
+            }
+            return sum;
+        }
+
+        int drain() {
+            int sum = 0;
+            for (AtomicInteger stripe : stripes) {
+                sum += stripe.getAndSet(0);
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package scheduler.inventory;
+
+import scheduler.db.ConnectionManager;
+import scheduler.db.Settings;
+import scheduler.model.Vaccine;
+import scheduler.repository.VaccineRepository;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-memory copy of the Vaccines table for the read paths, so a schedule search does not
+ * query the inventory every time.
+ *
+ * The table is loaded on the first read. For VaccineCacheTtlMs (default 5000) reads are served
+ * from memory; the first read after that checks the table's change stamp (row count plus the sum
+ * of the per-row versions every update bumps) and reloads only if it moved. Changes made by other
+ * processes therefore show up within one TTL. Writes made by this process call invalidate(name),
+ * and the next read re-reads just the rows named that way, so the rest of the copy is kept.
+ */
+public class VaccineCache {
+
+    private static final String TTL_ENV = "VaccineCacheTtlMs";
+
+    private static VaccineCache instance = null;
+
+    private final long ttlMs;
+    private final VaccineRepository vaccines = new VaccineRepository();
+    // replaced as a whole, never modified
+    private volatile Snapshot snapshot;
+    // vaccines this process changed since they were last read; a name added while a load runs
+    // stays here, so the next read picks up the change
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+    private VaccineCache(long ttlMs) {
+        this.ttlMs = Math.max(0, ttlMs);
+    }
+
+    public static synchronized VaccineCache getInstance() {
+        if (instance == null) {
+            instance = new VaccineCache(Settings.getInt(TTL_ENV, 5_000));
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the cache, or null if nothing has used it yet.
+     */
+    public static synchronized VaccineCache getInstanceIfStarted() {
+        return instance;
+    }
+
+    /**
+     * Every vaccine as stored at most one TTL ago. These are copies, so changing one does not
+     * change what the next caller sees.
+     */
+    public List<Vaccine> getAll() throws SQLException {
+        List<Vaccine> copies = new ArrayList<>();
+        for (Vaccine vaccine : current().vaccines.values()) {
+            copies.add(new Vaccine.VaccineBuilder(vaccine.getVaccineName(),
+                    vaccine.getAvailableDoses()).build());
+        }
+        return copies;
+    }
+
+    /**
+     * Whether getAll() can be answered without a query.
+     */
+    public boolean isFresh() {
+        Snapshot s = snapshot;
+        return s != null && dirty.isEmpty() && System.currentTimeMillis() - s.checkedAt <= ttlMs;
+    }
+
+    /**
+     * Marks one vaccine as changed; called after this process writes its row.
+     */
+    public void invalidate(String vaccineName) {
+        dirty.add(vaccineName);
+    }
+
+    /**
+     * Invalidates the vaccine's cached row if the cache is in use.
+     */
+    public static void invalidateIfStarted(String vaccineName) {
+        VaccineCache cache = getInstanceIfStarted();
+        if (cache != null) {
+            cache.invalidate(vaccineName);
+        }
+    }
+
+    private Snapshot current() throws SQLException {
+        Snapshot s = snapshot;
+        if (s != null && dirty.isEmpty() && System.currentTimeMillis() - s.checkedAt <= ttlMs) {
+            return s;
+        }
+        synchronized (this) {
+            // another thread may have checked while we waited
+            s = snapshot;
+            long now = System.currentTimeMillis();
+            if (s != null && now - s.checkedAt <= ttlMs) {
+                if (!dirty.isEmpty()) {
+                    s = refresh(s);
+                    snapshot = s;
+                }
+                return s;
+            }
+            // a full check covers every local write made before it starts
+            dirty.clear();
+            ConnectionManager cm = new ConnectionManager();
+            Connection con = cm.createConnection();
+            try {
+                // the stamp is read first: a change made while loading moves it past what we
+                // keep, and costs one more reload rather than going unnoticed
+                long stamp = vaccines.findChangeStamp(con);
+                if (s != null && s.stamp == stamp) {
+                    s = new Snapshot(s.vaccines, stamp, now);
+                } else {
+                    Map<String, Vaccine> loaded = new LinkedHashMap<>();
+                    for (Vaccine vaccine : vaccines.findAll(con)) {
+                        loaded.put(vaccine.getVaccineName(), vaccine);
+                    }
+                    s = new Snapshot(Collections.unmodifiableMap(loaded), stamp, now);
+                }
+            } finally {
+                cm.closeConnection();
+            }
+            snapshot = s;
+            return s;
+        }
+    }
+
+    /**
+     * Re-reads only the vaccines this process changed. The stamp is kept as it was, so the check
+     * at the end of the TTL sees our own writes as a move and does one full reload, which also
+     * catches anything another process changed in the meantime.
+     */
+    private Snapshot refresh(Snapshot s) throws SQLException {
+        List<String> names = new ArrayList<>(dirty);
+        dirty.removeAll(names);
+        Map<String, Vaccine> updated = new LinkedHashMap<>(s.vaccines);
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            Connection con = cm.createConnection();
+            for (String name : names) {
+                Vaccine vaccine = vaccines.find(con, name);
+                if (vaccine == null) {
+                    updated.remove(name);
+                } else {
+                    updated.put(name, vaccine);
+                }
+            }
+        } catch (SQLException e) {
+            // read them again next time
+            dirty.addAll(names);
+            throw e;
+        } finally {
+            cm.closeConnection();
+        }
+        return new Snapshot(Collections.unmodifiableMap(updated), s.stamp, s.checkedAt);
+    }
+
+    /**
+     * The vaccines as loaded, the change stamp they were loaded at and when that was last checked.
+     */
+    private static class Snapshot {
+        private final Map<String, Vaccine> vaccines;
+        private final long stamp;
+        private final long checkedAt;
+
+        Snapshot(Map<String, Vaccine> vaccines, long stamp, long checkedAt) {
+            this.vaccines = vaccines;
+            this.stamp = stamp;
+            this.checkedAt = checkedAt;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package scheduler.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and database work of one console command, summed over every session.
+ */
+public class CommandStats implements CommandStatsMBean {
+
+    private final String command;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    CommandStats(String command) {
+        this.command = command;
+    }
+
+    void record(long nanos, boolean failed) {
+        latency.record(nanos);
+        count.increment();
+        if (failed) {
+            errors.increment();
+        }
+        if (nanos > maxNanos.get()) {
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    void onConnection() {
+        connections.increment();
+    }
+
+    void onStatement() {
+        statements.increment();
+    }
+
+    void onRow() {
+        rows.increment();
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getConnections() {
+        return connections.sum();
+    }
+
+    @Override
+    public long getStatements() {
+        return statements.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public long getP50Micros() {
+        return percentile(0.50);
+    }
+
+    @Override
+    public long getP95Micros() {
+        return percentile(0.95);
+    }
+
+    @Override
+    public long getP99Micros() {
+        return percentile(0.99);
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return maxNanos.get() / 1000;
+    }
+
+    // a bucket's upper bound can be past the slowest recording
+    private long percentile(double fraction) {
+        return Math.min(latency.percentile(fraction), getMaxMicros());
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        count.reset();
+        errors.reset();
+        connections.reset();
+        statements.reset();
+        rows.reset();
+        maxNanos.set(0);
+    }
+}
@@ -0,0 +1,28 @@
+package scheduler.metrics;
+
+/**
+ * The JMX view of one command's statistics, registered as scheduler:type=Command,name=&lt;command&gt;.
+ * Latencies are in microseconds.
+ */
+public interface CommandStatsMBean {
+
+    long getCount();
+
+    long getErrors();
+
+    long getConnections();
+
+    long getStatements();
+
+    long getRows();
+
+    long getP50Micros();
+
+    long getP95Micros();
+
+    long getP99Micros();
+
+    long getMaxMicros();
+
+    void reset();
+}
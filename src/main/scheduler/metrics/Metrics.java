@@ -0,0 +1,127 @@
+package scheduler.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-command latency and database work.
+ *
+ * Scheduler.execute() brackets every command with begin() and end(). While a command runs,
+ * connections borrowed, statements prepared and (with MetricsCountRows=1) rows read on the same
+ * thread are charged to it; the connection pool reports them through the static on...() hooks.
+ * Lookups a command runs on the AsyncExecutor are attached to it as well. Work done outside a
+ * command (background flushes and prefetches) is not counted. Every
+ * command's statistics are also registered as a JMX MBean.
+ */
+public class Metrics {
+
+    private static final String OBJECT_NAME_PREFIX = "scheduler:type=Command,name=";
+
+    // created eagerly: the hooks run on every statement and must not lock
+    private static final Metrics instance = new Metrics();
+
+    private final Map<String, CommandStats> commands = new ConcurrentHashMap<>();
+    // the command running on this thread, or null
+    private final ThreadLocal<CommandStats> current = new ThreadLocal<>();
+
+    private Metrics() {
+    }
+
+    public static Metrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Marks the start of a command on this thread and returns its statistics for end().
+     */
+    public CommandStats begin(String command) {
+        CommandStats stats = commands.get(command);
+        if (stats == null) {
+            stats = commands.computeIfAbsent(command, this::register);
+        }
+        current.set(stats);
+        return stats;
+    }
+
+    public void end(CommandStats stats, long startNanos, boolean failed) {
+        stats.record(System.nanoTime() - startNanos, failed);
+        current.set(null);
+    }
+
+    /**
+     * The statistics of the command running on this thread, or null.
+     */
+    public CommandStats current() {
+        return current.get();
+    }
+
+    /**
+     * Charges work done on this thread to the given command (or to none, for null). Used by
+     * threads that run part of a command on its behalf.
+     */
+    public void attach(CommandStats stats) {
+        if (stats == null) {
+            current.remove();
+        } else {
+            current.set(stats);
+        }
+    }
+
+    public static void onConnection() {
+        CommandStats stats = instance.current.get();
+        if (stats != null) {
+            stats.onConnection();
+        }
+    }
+
+    public static void onStatement() {
+        CommandStats stats = instance.current.get();
+        if (stats != null) {
+            stats.onStatement();
+        }
+    }
+
+    public static void onRow() {
+        CommandStats stats = instance.current.get();
+        if (stats != null) {
+            stats.onRow();
+        }
+    }
+
+    /**
+     * Every command seen so far, by name.
+     */
+    public List<CommandStats> getCommands() {
+        List<CommandStats> all = new ArrayList<>(commands.values());
+        all.sort(Comparator.comparing(CommandStats::getCommand));
+        return all;
+    }
+
+    public void reset() {
+        for (CommandStats stats : commands.values()) {
+            stats.reset();
+        }
+    }
+
+    private CommandStats register(String command) {
+        CommandStats stats = new CommandStats(command);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(command));
+            if (!server.isRegistered(name)) {
+                server.registerMBean(stats, name);
+            }
+        } catch (JMException e) {
+            System.out.println("Error occurred when registering the metrics of " + command);
+            e.printStackTrace();
+        }
+        return stats;
+    }
+}
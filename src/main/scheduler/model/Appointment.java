@@ -0,0 +1,62 @@
+package scheduler.model;
+
+import java.sql.Date;
+
+/**
+ * One row of the Appointments table.
+ */
+public class Appointment {
+    private final int id;
+    private final Date time;
+    // when the appointment starts, in minutes since midnight
+    private final int minute;
+    private final String caregiverName;
+    private final String patientName;
+    private final String vaccineName;
+
+    public Appointment(int id, Date time, int minute, String caregiverName, String patientName, String vaccineName) {
+        this.id = id;
+        this.time = time;
+        this.minute = minute;
+        this.caregiverName = caregiverName;
+        this.patientName = patientName;
+        this.vaccineName = vaccineName;
+    }
+
+    // Getters
+    public int getId() {
+        return id;
+    }
+
+    public Date getTime() {
+        return time;
+    }
+
+    public int getMinute() {
+        return minute;
+    }
+
+    public String getCaregiverName() {
+        return caregiverName;
+    }
+
+    public String getPatientName() {
+        return patientName;
+    }
+
+    public String getVaccineName() {
+        return vaccineName;
+    }
+
+    @Override
+    public String toString() {
+        return "Appointment{" +
+                "id=" + id +
+                ", time=" + time +
+                ", minute=" + minute +
+                ", caregiverName='" + caregiverName + '\'' +
+                ", patientName='" + patientName + '\'' +
+                ", vaccineName='" + vaccineName + '\'' +
+                '}';
+    }
+}
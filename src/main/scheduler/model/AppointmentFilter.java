@@ -0,0 +1,124 @@
+package scheduler.model;
+
+import java.sql.Date;
+import java.time.LocalDate;
+
+/**
+ * The filters and page position of a show_appointments request.
+ *
+ * Options are given as tokens: from=&lt;date&gt;, to=&lt;date&gt;, vaccine=&lt;name&gt;,
+ * upcoming, and limit=&lt;page size&gt;. Pages are ordered by (Time, SlotStart, aid) and the position is
+ * the key of the last row shown, so fetching the next page costs the same however far in
+ * the user is.
+ */
+public class AppointmentFilter {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private final Date from;
+    private final Date to;
+    private final String vaccine;
+    private final int pageSize;
+    // key of the last row of the previous page, or null for the first page
+    private final Date afterTime;
+    private final int afterMinute;
+    private final int afterId;
+
+    private AppointmentFilter(Date from, Date to, String vaccine, int pageSize, Date afterTime, int afterMinute,
+                              int afterId) {
+        this.from = from;
+        this.to = to;
+        this.vaccine = vaccine;
+        this.pageSize = pageSize;
+        this.afterTime = afterTime;
+        this.afterMinute = afterMinute;
+        this.afterId = afterId;
+    }
+
+    /**
+     * Parses tokens[start..]. Throws IllegalArgumentException on an unknown or malformed option.
+     */
+    public static AppointmentFilter parse(String[] tokens, int start) {
+        Date from = null;
+        Date to = null;
+        String vaccine = null;
+        int pageSize = DEFAULT_PAGE_SIZE;
+        for (int i = start; i < tokens.length; i++) {
+            String token = tokens[i];
+            if (token.isEmpty()) {
+                continue;
+            }
+            if (token.equals("upcoming")) {
+                from = Date.valueOf(LocalDate.now());
+                continue;
+            }
+            int eq = token.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Unknown option: " + token);
+            }
+            String key = token.substring(0, eq);
+            String value = token.substring(eq + 1);
+            switch (key) {
+                case "from":
+                    from = Date.valueOf(value);
+                    break;
+                case "to":
+                    to = Date.valueOf(value);
+                    break;
+                case "vaccine":
+                    vaccine = value;
+                    break;
+                case "limit":
+                    pageSize = Integer.parseInt(value);
+                    if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+                        throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + token);
+            }
+        }
+        return new AppointmentFilter(from, to, vaccine, pageSize, null, 0, 0);
+    }
+
+    /**
+     * The same filter, positioned after the given row.
+     */
+    public AppointmentFilter after(Date time, int minute, int aid) {
+        return new AppointmentFilter(from, to, vaccine, pageSize, time, minute, aid);
+    }
+
+    // Getters
+    public Date getFrom() {
+        return from;
+    }
+
+    public Date getTo() {
+        return to;
+    }
+
+    public String getVaccine() {
+        return vaccine;
+    }
+
+    public Date getAfterTime() {
+        return afterTime;
+    }
+
+    public int getAfterMinute() {
+        return afterMinute;
+    }
+
+    public int getAfterId() {
+        return afterId;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public boolean isFirstPage() {
+        return afterTime == null;
+    }
+}
@@ -0,0 +1,50 @@
+package scheduler.model;
+
+import java.sql.Date;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A caregiver's shift on a date, and the minutes at which appointments have been booked in it.
+ * Minutes count from midnight; a shift without declared times covers the whole day.
+ */
+public class Availability {
+    private final Date time;
+    private final String caregiverName;
+    private final int startMinute;
+    private final int endMinute;
+    private final List<Integer> bookedMinutes;
+
+    public Availability(Date time, String caregiverName, int startMinute, int endMinute) {
+        this(time, caregiverName, startMinute, endMinute, Collections.emptyList());
+    }
+
+    public Availability(Date time, String caregiverName, int startMinute, int endMinute, List<Integer> bookedMinutes) {
+        this.time = time;
+        this.caregiverName = caregiverName;
+        this.startMinute = startMinute;
+        this.endMinute = endMinute;
+        this.bookedMinutes = bookedMinutes;
+    }
+
+    // Getters
+    public Date getTime() {
+        return time;
+    }
+
+    public String getCaregiverName() {
+        return caregiverName;
+    }
+
+    public int getStartMinute() {
+        return startMinute;
+    }
+
+    public int getEndMinute() {
+        return endMinute;
+    }
+
+    public List<Integer> getBookedMinutes() {
+        return bookedMinutes;
+    }
+}
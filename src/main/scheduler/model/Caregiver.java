@@ -1,10 +1,13 @@
 package scheduler.model;
 
+import scheduler.account.UsernameFilter;
 import scheduler.db.ConnectionManager;
-import scheduler.util.Util;
+import scheduler.repository.AvailabilityRepository;
+import scheduler.repository.CaregiverRepository;
+import scheduler.util.PasswordHasher;
 
 import java.sql.*;
-import java.util.Arrays;
+import java.util.List;
 
 public class Caregiver {
     private final String username;
@@ -39,33 +42,65 @@ public class Caregiver {
     public void saveToDB() throws SQLException {
         ConnectionManager cm = new ConnectionManager();
         Connection con = cm.createConnection();
-
-        String addCaregiver = "INSERT INTO Caregivers VALUES (? , ?, ?)";
         try {
-            PreparedStatement statement = con.prepareStatement(addCaregiver);
-            statement.setString(1, this.username);
-            statement.setBytes(2, this.salt);
-            statement.setBytes(3, this.hash);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
+            // new accounts are always hashed with the current parameters
+            new CaregiverRepository().insert(con, this.username, this.salt, this.hash,
+                    PasswordHasher.getInstance().getCurrentParams());
+            UsernameFilter.caregivers().add(this.username);
         } finally {
             cm.closeConnection();
         }
     }
 
-    public void uploadAvailability(Date d) throws SQLException {
+    /**
+     * Inserts availabilities for many caregivers through batched statements in one transaction.
+     * Rows that already exist, or that name an unknown caregiver, are skipped instead of failing
+     * the batch.
+     */
+    public static UploadResult uploadAvailability(List<Availability> rows) throws SQLException {
         ConnectionManager cm = new ConnectionManager();
         Connection con = cm.createConnection();
+        try {
+            con.setAutoCommit(false);
+            UploadResult result = new AvailabilityRepository().insertMissing(con, rows);
+            con.commit();
+            return result;
+        } catch (SQLException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            con.setAutoCommit(true);
+            cm.closeConnection();
+        }
+    }
+
+    public static class UploadResult {
+        private final int inserted;
+        private final int skipped;
+
+        public UploadResult(int inserted, int skipped) {
+            this.inserted = inserted;
+            this.skipped = skipped;
+        }
+
+        public int getInserted() {
+            return inserted;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+    }
 
-        String addAvailability = "INSERT INTO Availabilities VALUES (? , ?)";
+    // stores a hash made with the current parameters; used when rehashing on login
+    private static void updateHash(String username, byte[] salt, byte[] hash) {
+        ConnectionManager cm = new ConnectionManager();
         try {
-            PreparedStatement statement = con.prepareStatement(addAvailability);
-            statement.setDate(1, d);
-            statement.setString(2, this.username);
-            statement.executeUpdate();
+            Connection con = cm.createConnection();
+            new CaregiverRepository().updateHash(con, username, salt, hash, PasswordHasher.getInstance().getCurrentParams());
         } catch (SQLException e) {
-            throw new SQLException();
+            System.out.println("Error occurred when upgrading the password hash");
+            e.printStackTrace();
         } finally {
             cm.closeConnection();
         }
@@ -102,32 +137,33 @@ public class Caregiver {
             ConnectionManager cm = new ConnectionManager();
             Connection con = cm.createConnection();
 
-            String getCaregiver = "SELECT Salt, Hash FROM Caregivers WHERE Username = ?";
+            Credentials credentials;
             try {
-                PreparedStatement statement = con.prepareStatement(getCaregiver);
-                statement.setString(1, this.username);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    byte[] salt = resultSet.getBytes("Salt");
-                    // we need to call Util.trim() to get rid of the paddings,
-                    // try to remove the use of Util.trim() and you'll see :)
-                    byte[] hash = Util.trim(resultSet.getBytes("Hash"));
-                    // check if the password matches
-                    byte[] calculatedHash = Util.generateHash(password, salt);
-                    if (!Arrays.equals(hash, calculatedHash)) {
-                        return null;
-                    } else {
-                        this.salt = salt;
-                        this.hash = hash;
-                        return new Caregiver(this);
-                    }
-                }
-                return null;
-            } catch (SQLException e) {
-                throw new SQLException();
+                credentials = new CaregiverRepository().findCredentials(con, this.username);
             } finally {
+                // give the connection back before spending CPU on the hash
                 cm.closeConnection();
             }
+            if (credentials == null) {
+                return null;
+            }
+            byte[] salt = credentials.getSalt();
+            byte[] hash = credentials.getHash();
+            PasswordHasher.HashParams params = credentials.getParams();
+
+            // check if the password matches
+            PasswordHasher hasher = PasswordHasher.getInstance();
+            if (!hasher.verify(password, salt, hash, params)) {
+                return null;
+            }
+            this.salt = salt;
+            this.hash = hash;
+            if (!params.equals(hasher.getCurrentParams())) {
+                // upgrade the stored hash without making this login wait for it
+                hasher.rehashInBackground("Caregivers:" + this.username, password,
+                        (newSalt, newHash) -> updateHash(this.username, newSalt, newHash));
+            }
+            return new Caregiver(this);
         }
     }
 }
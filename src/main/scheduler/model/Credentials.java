@@ -0,0 +1,37 @@
+package scheduler.model;
+
+import scheduler.util.PasswordHasher;
+
+/**
+ * The stored password hash of a patient or caregiver, and the parameters it was made with.
+ */
+public class Credentials {
+    private final String username;
+    private final byte[] salt;
+    private final byte[] hash;
+    private final PasswordHasher.HashParams params;
+
+    public Credentials(String username, byte[] salt, byte[] hash, PasswordHasher.HashParams params) {
+        this.username = username;
+        this.salt = salt;
+        this.hash = hash;
+        this.params = params;
+    }
+
+    // Getters
+    public String getUsername() {
+        return username;
+    }
+
+    public byte[] getSalt() {
+        return salt;
+    }
+
+    public byte[] getHash() {
+        return hash;
+    }
+
+    public PasswordHasher.HashParams getParams() {
+        return params;
+    }
+}
@@ -0,0 +1,80 @@
+package scheduler.model;
+
+import java.sql.Date;
+
+/**
+ * Which rows an export writes.
+ *
+ * Options are given as tokens: from=&lt;date&gt;, to=&lt;date&gt;, caregiver=&lt;name&gt; and
+ * vaccine=&lt;name&gt;. Unset options do not filter.
+ */
+public class ExportFilter {
+
+    private final Date from;
+    private final Date to;
+    private final String caregiver;
+    private final String vaccine;
+
+    private ExportFilter(Date from, Date to, String caregiver, String vaccine) {
+        this.from = from;
+        this.to = to;
+        this.caregiver = caregiver;
+        this.vaccine = vaccine;
+    }
+
+    /**
+     * Parses tokens[start..]. Throws IllegalArgumentException on an unknown or malformed option.
+     */
+    public static ExportFilter parse(String[] tokens, int start) {
+        Date from = null;
+        Date to = null;
+        String caregiver = null;
+        String vaccine = null;
+        for (int i = start; i < tokens.length; i++) {
+            String token = tokens[i];
+            if (token.isEmpty()) {
+                continue;
+            }
+            int eq = token.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Unknown option: " + token);
+            }
+            String key = token.substring(0, eq);
+            String value = token.substring(eq + 1);
+            switch (key) {
+                case "from":
+                    from = Date.valueOf(value);
+                    break;
+                case "to":
+                    to = Date.valueOf(value);
+                    break;
+                case "caregiver":
+                    caregiver = value;
+                    break;
+                case "vaccine":
+                    vaccine = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + token);
+            }
+        }
+        return new ExportFilter(from, to, caregiver, vaccine);
+    }
+
+    // Getters
+    public Date getFrom() {
+        return from;
+    }
+
+    public Date getTo() {
+        return to;
+    }
+
+    public String getCaregiver() {
+        return caregiver;
+    }
+
+    public String getVaccine() {
+        return vaccine;
+    }
+}
@@ -1,10 +1,11 @@
 package scheduler.model;
 
+import scheduler.account.UsernameFilter;
 import scheduler.db.ConnectionManager;
-import scheduler.util.Util;
+import scheduler.repository.PatientRepository;
+import scheduler.util.PasswordHasher;
 
 import java.sql.*;
-import java.util.Arrays;
 
 public class Patient {
     private final String username;
@@ -39,16 +40,11 @@ public class Patient {
     public void saveToDB() throws SQLException {
         ConnectionManager cm = new ConnectionManager();
         Connection con = cm.createConnection();
-
-        String addPatient = "INSERT INTO Patients VALUES (? , ?, ?)";
         try {
-            PreparedStatement statement = con.prepareStatement(addPatient);
-            statement.setString(1, this.username);
-            statement.setBytes(2, this.salt);
-            statement.setBytes(3, this.hash);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
+            // new accounts are always hashed with the current parameters
+            new PatientRepository().insert(con, this.username, this.salt, this.hash,
+                    PasswordHasher.getInstance().getCurrentParams());
+            UsernameFilter.patients().add(this.username);
         } finally {
             cm.closeConnection();
         }
@@ -58,6 +54,20 @@ public class Patient {
 
 
 
+    // stores a hash made with the current parameters; used when rehashing on login
+    private static void updateHash(String username, byte[] salt, byte[] hash) {
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            Connection con = cm.createConnection();
+            new PatientRepository().updateHash(con, username, salt, hash, PasswordHasher.getInstance().getCurrentParams());
+        } catch (SQLException e) {
+            System.out.println("Error occurred when upgrading the password hash");
+            e.printStackTrace();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
     public static class PatientBuilder {
         private final String username;
         private final byte[] salt;
@@ -89,32 +99,33 @@ public class Patient {
             ConnectionManager cm = new ConnectionManager();
             Connection con = cm.createConnection();
 
-            String getPatient = "SELECT Salt, Hash FROM Patients WHERE Username = ?";
+            Credentials credentials;
             try {
-                PreparedStatement statement = con.prepareStatement(getPatient);
-                statement.setString(1, this.username);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    byte[] salt = resultSet.getBytes("Salt");
-                    // we need to call Util.trim() to get rid of the paddings,
-                    // try to remove the use of Util.trim() and you'll see :)
-                    byte[] hash = Util.trim(resultSet.getBytes("Hash"));
-                    // check if the password matches
-                    byte[] calculatedHash = Util.generateHash(password, salt);
-                    if (!Arrays.equals(hash, calculatedHash)) {
-                        return null;
-                    } else {
-                        this.salt = salt;
-                        this.hash = hash;
-                        return new Patient(this);
-                    }
-                }
-                return null;
-            } catch (SQLException e) {
-                throw new SQLException();
+                credentials = new PatientRepository().findCredentials(con, this.username);
             } finally {
+                // give the connection back before spending CPU on the hash
                 cm.closeConnection();
             }
+            if (credentials == null) {
+                return null;
+            }
+            byte[] salt = credentials.getSalt();
+            byte[] hash = credentials.getHash();
+            PasswordHasher.HashParams params = credentials.getParams();
+
+            // check if the password matches
+            PasswordHasher hasher = PasswordHasher.getInstance();
+            if (!hasher.verify(password, salt, hash, params)) {
+                return null;
+            }
+            this.salt = salt;
+            this.hash = hash;
+            if (!params.equals(hasher.getCurrentParams())) {
+                // upgrade the stored hash without making this login wait for it
+                hasher.rehashInBackground("Patients:" + this.username, password,
+                        (newSalt, newHash) -> updateHash(this.username, newSalt, newHash));
+            }
+            return new Patient(this);
         }
     }
 }
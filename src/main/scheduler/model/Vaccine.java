@@ -1,10 +1,10 @@
 package scheduler.model;
 
 import scheduler.db.ConnectionManager;
+import scheduler.inventory.VaccineCache;
+import scheduler.repository.VaccineRepository;
 
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 
 public class Vaccine {
@@ -16,11 +16,6 @@ public class Vaccine {
         this.availableDoses = builder.availableDoses;
     }
 
-    private Vaccine(VaccineGetter getter) {
-        this.vaccineName = getter.vaccineName;
-        this.availableDoses = getter.availableDoses;
-    }
-
     // Getters
     public String getVaccineName() {
         return vaccineName;
@@ -33,15 +28,9 @@ public class Vaccine {
     public void saveToDB() throws SQLException {
         ConnectionManager cm = new ConnectionManager();
         Connection con = cm.createConnection();
-
-        String addDoses = "INSERT INTO vaccines VALUES (?, ?)";
         try {
-            PreparedStatement statement = con.prepareStatement(addDoses);
-            statement.setString(1, this.vaccineName);
-            statement.setInt(2, this.availableDoses);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
+            new VaccineRepository().insert(con, this.vaccineName, this.availableDoses);
+            VaccineCache.invalidateIfStarted(this.vaccineName);
         } finally {
             cm.closeConnection();
         }
@@ -52,41 +41,30 @@ public class Vaccine {
         if (num <= 0) {
             throw new IllegalArgumentException("Argument cannot be negative!");
         }
-        this.availableDoses += num;
-
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String removeAvailability  = "UPDATE vaccines SET Doses = ? WHERE name = ?;";
-        try {
-            PreparedStatement statement = con.prepareStatement(removeAvailability);
-            statement.setInt(1, this.availableDoses);
-            statement.setString(2, this.vaccineName);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
-        }
+        applyDelta(num);
     }
 
-    // Decrement the available doses
+    // Decrement the available doses, never letting the stored count drop below zero
     public void decreaseAvailableDoses(int num) throws SQLException {
-        if (this.availableDoses - num < 0) {
+        if (num <= 0) {
+            throw new IllegalArgumentException("Argument cannot be negative!");
+        }
+        if (!applyDelta(-num)) {
             throw new IllegalArgumentException("Not enough available doses!");
         }
-        this.availableDoses -= num;
+    }
+
+    // The change is applied relative to whatever is stored, so concurrent updates are not lost
+    private boolean applyDelta(int delta) throws SQLException {
         ConnectionManager cm = new ConnectionManager();
         Connection con = cm.createConnection();
-
-        String removeAvailability  = "UPDATE vaccines SET Doses = ? WHERE name = ?;";
         try {
-            PreparedStatement statement = con.prepareStatement(removeAvailability);
-            statement.setInt(1, this.availableDoses);
-            statement.setString(2, this.vaccineName);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
+            boolean applied = new VaccineRepository().applyDelta(con, this.vaccineName, delta);
+            if (applied) {
+                this.availableDoses += delta;
+                VaccineCache.invalidateIfStarted(this.vaccineName);
+            }
+            return applied;
         } finally {
             cm.closeConnection();
         }
@@ -116,7 +94,6 @@ public class Vaccine {
 
     public static class VaccineGetter {
         private final String vaccineName;
-        private int availableDoses;
 
         public VaccineGetter(String vaccineName) {
             this.vaccineName = vaccineName;
@@ -125,19 +102,8 @@ public class Vaccine {
         public Vaccine get() throws SQLException {
             ConnectionManager cm = new ConnectionManager();
             Connection con = cm.createConnection();
-
-            String getVaccine = "SELECT Name, Doses FROM Vaccines WHERE Name = ?";
             try {
-                PreparedStatement statement = con.prepareStatement(getVaccine);
-                statement.setString(1, this.vaccineName);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    this.availableDoses = resultSet.getInt("Doses");
-                    return new Vaccine(this);
-                }
-                return null;
-            } catch (SQLException e) {
-                throw new SQLException();
+                return new VaccineRepository().find(con, this.vaccineName);
             } finally {
                 cm.closeConnection();
             }
@@ -0,0 +1,51 @@
+package scheduler.model;
+
+import java.sql.Date;
+
+/**
+ * One row of the Waitlist table: a patient waiting for a dose of a vaccine on any date in a
+ * range.
+ */
+public class WaitlistEntry {
+    private final int id;
+    private final String patientName;
+    private final String vaccineName;
+    private final Date from;
+    private final Date to;
+    // how many entries for the vaccine are served first, or -1 if not known
+    private final int position;
+
+    public WaitlistEntry(int id, String patientName, String vaccineName, Date from, Date to, int position) {
+        this.id = id;
+        this.patientName = patientName;
+        this.vaccineName = vaccineName;
+        this.from = from;
+        this.to = to;
+        this.position = position;
+    }
+
+    // Getters
+    public int getId() {
+        return id;
+    }
+
+    public String getPatientName() {
+        return patientName;
+    }
+
+    public String getVaccineName() {
+        return vaccineName;
+    }
+
+    public Date getFrom() {
+        return from;
+    }
+
+    public Date getTo() {
+        return to;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,126 @@
+package scheduler.repository;
+
+import scheduler.model.Credentials;
+import scheduler.util.PasswordHasher;
+import scheduler.util.Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The SQL shared by the Patients and Caregivers tables, which have the same columns.
+ */
+public abstract class AccountRepository extends Repository {
+
+    // rows fetched per round trip when reading every username
+    private static final int USERNAME_FETCH_SIZE = 1000;
+
+    private final String selectExists;
+    private final String selectCount;
+    private final String selectUsernames;
+    private final String selectCredentials;
+    private final String insert;
+    private final String insertIfMissing;
+    private final String updateHash;
+
+    AccountRepository(String table) {
+        this.selectExists = "SELECT 1 FROM " + table + " WHERE Username = ?";
+        this.selectCount = "SELECT COUNT(*) FROM " + table;
+        this.selectUsernames = "SELECT Username FROM " + table;
+        this.selectCredentials = "SELECT Salt, Hash, HashParams FROM " + table + " WHERE Username = ?";
+        this.insert = "INSERT INTO " + table + " (Username, Salt, Hash, HashParams) VALUES (?, ?, ?, ?)";
+        // inserts nothing, and reports 0 rows, when the name is taken
+        this.insertIfMissing = "INSERT INTO " + table + " (Username, Salt, Hash, HashParams) SELECT ?, ?, ?, ? " +
+                "WHERE NOT EXISTS (SELECT 1 FROM " + table + " WHERE Username = ?)";
+        this.updateHash = "UPDATE " + table + " SET Salt = ?, Hash = ?, HashParams = ? WHERE Username = ?";
+    }
+
+    public boolean exists(Connection con, String username) throws SQLException {
+        PreparedStatement statement = prepare(con, selectExists);
+        statement.setString(1, username);
+        try (ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next();
+        }
+    }
+
+    public int count(Connection con) throws SQLException {
+        try (ResultSet resultSet = prepare(con, selectCount).executeQuery()) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    /**
+     * Hands every username to the consumer, streaming rather than loading them all at once.
+     */
+    public void forEachUsername(Connection con, Consumer<String> consumer) throws SQLException {
+        PreparedStatement statement = prepare(con, selectUsernames);
+        statement.setFetchSize(USERNAME_FETCH_SIZE);
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                consumer.accept(resultSet.getString(1));
+            }
+        }
+    }
+
+    /**
+     * The stored hash of the account, or null if there is no such account.
+     */
+    public Credentials findCredentials(Connection con, String username) throws SQLException {
+        PreparedStatement statement = prepare(con, selectCredentials);
+        statement.setString(1, username);
+        try (ResultSet resultSet = statement.executeQuery()) {
+            if (!resultSet.next()) {
+                return null;
+            }
+            PasswordHasher.HashParams params;
+            try {
+                params = PasswordHasher.HashParams.parse(resultSet.getString(3));
+            } catch (IllegalArgumentException e) {
+                throw new SQLException("Account " + username + " has " + e.getMessage().toLowerCase(), e);
+            }
+            // we need to call Util.trim() to get rid of the paddings,
+            // try to remove the use of Util.trim() and you'll see :)
+            return new Credentials(username, resultSet.getBytes(1), Util.trim(resultSet.getBytes(2)), params);
+        }
+    }
+
+    public void insert(Connection con, String username, byte[] salt, byte[] hash, PasswordHasher.HashParams params)
+            throws SQLException {
+        PreparedStatement statement = prepare(con, insert);
+        statement.setString(1, username);
+        statement.setBytes(2, salt);
+        statement.setBytes(3, hash);
+        statement.setString(4, params.toString());
+        statement.executeUpdate();
+    }
+
+    /**
+     * Inserts accounts through batched statements; names that are already taken are skipped
+     * instead of failing the batch. The caller owns the transaction. Returns how many were
+     * inserted.
+     */
+    public int insertMissing(Connection con, List<Credentials> accounts) throws SQLException {
+        return countWritten(executeBatch(con, insertIfMissing, accounts, (statement, account) -> {
+            statement.setString(1, account.getUsername());
+            statement.setBytes(2, account.getSalt());
+            statement.setBytes(3, account.getHash());
+            statement.setString(4, account.getParams().toString());
+            statement.setString(5, account.getUsername());
+        }));
+    }
+
+    public void updateHash(Connection con, String username, byte[] salt, byte[] hash, PasswordHasher.HashParams params)
+            throws SQLException {
+        PreparedStatement statement = prepare(con, updateHash);
+        statement.setBytes(1, salt);
+        statement.setBytes(2, hash);
+        statement.setString(3, params.toString());
+        statement.setString(4, username);
+        statement.executeUpdate();
+    }
+}
@@ -0,0 +1,233 @@
+package scheduler.repository;
+
+import scheduler.db.ConnectionManager;
+import scheduler.model.Appointment;
+import scheduler.model.AppointmentFilter;
+import scheduler.schedule.Slots;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The Appointments table.
+ */
+public class AppointmentRepository extends Repository {
+
+    // rows fetched per round trip when paging through appointments
+    private static final int FETCH_SIZE = 100;
+
+    private static final String SELECT_ONE = "SELECT aid, Time, SlotStart, cname, pname, vname FROM Appointments WHERE aid = ?";
+    private static final String SELECT_IDS = "SELECT aid FROM Appointments WHERE aid >= ? AND aid <= ?";
+    private static final String DELETE = "DELETE FROM Appointments WHERE aid = ?";
+    private static final String COUNT_BY_CAREGIVER =
+            "SELECT cname, COUNT(*) FROM Appointments WHERE Time >= ? AND Time <= ? GROUP BY cname";
+    private static final String SELECT_LATEST_CAREGIVER =
+            "SELECT cname FROM Appointments WHERE pname = ? ORDER BY Time DESC, aid DESC";
+    // only inserts if the minute is in one of the caregiver's shifts on the date and no
+    // appointment in that shift starts less than a slot length before or after it
+    private static final String INSERT_IF_FREE =
+            "INSERT INTO Appointments (aid, Time, SlotStart, cname, pname, vname) " +
+            "SELECT ?, a.Time, ?, a.Username, ?, ? FROM Availabilities a " +
+            "WHERE a.Time = ? AND a.Username = ? AND a.StartMinute <= ? AND a.EndMinute > ? AND NOT EXISTS " +
+            "(SELECT 1 FROM Appointments p WHERE p.Time = a.Time AND p.cname = a.Username " +
+            "AND p.SlotStart >= a.StartMinute AND p.SlotStart < a.EndMinute AND p.SlotStart > ? AND p.SlotStart < ?)";
+
+    /**
+     * Books the caregiver on the date at the minute a slot starts. Returns false if that is not
+     * in one of their shifts or the slot overlaps one already booked.
+     */
+    public boolean insertIfFree(Connection con, int aid, Date d, int minute, String caregiver, String patient,
+                                String vaccine) throws SQLException {
+        PreparedStatement statement = prepare(con, INSERT_IF_FREE);
+        bindIfFree(statement, aid, d, minute, caregiver, patient, vaccine);
+        return statement.executeUpdate() == 1;
+    }
+
+    /**
+     * Books many appointments through one batched statement, each only if its minute is in one of
+     * the caregiver's shifts and its slot overlaps none already booked. Returns which of them
+     * were inserted; a row that loses a race on a unique key to another process is reported as
+     * not inserted rather than failing the others. The caller owns the transaction.
+     */
+    public boolean[] insertAllIfFree(Connection con, List<Appointment> rows) throws SQLException {
+        int[] counts;
+        try {
+            counts = executeBatch(con, INSERT_IF_FREE, rows, (statement, row) -> bindIfFree(statement, row.getId(),
+                    row.getTime(), row.getMinute(), row.getCaregiverName(), row.getPatientName(), row.getVaccineName()));
+        } catch (BatchUpdateException e) {
+            // both dialects only undo the failed row, so the rows before and after it stand
+            if (!ConnectionManager.getBackend().getDialect().isUniqueViolation(e)) {
+                throw e;
+            }
+            counts = e.getUpdateCounts();
+        }
+        boolean[] inserted = new boolean[counts.length];
+        boolean unknown = false;
+        for (int i = 0; i < counts.length; i++) {
+            inserted[i] = counts[i] > 0;
+            unknown |= counts[i] == Statement.SUCCESS_NO_INFO;
+        }
+        if (unknown) {
+            // the driver did not say whether these rows passed the NOT EXISTS guard, so look
+            Set<Integer> found = findIds(con, rows);
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == Statement.SUCCESS_NO_INFO) {
+                    inserted[i] = found.contains(rows.get(i).getId());
+                }
+            }
+        }
+        return inserted;
+    }
+
+    // which of the rows' ids are in the table, as seen by the caller's transaction
+    private static Set<Integer> findIds(Connection con, List<Appointment> rows) throws SQLException {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (Appointment row : rows) {
+            min = Math.min(min, row.getId());
+            max = Math.max(max, row.getId());
+        }
+        // ids are allocated in blocks, so a range is small and keeps the statement cacheable
+        PreparedStatement statement = prepare(con, SELECT_IDS);
+        statement.setInt(1, min);
+        statement.setInt(2, max);
+        Set<Integer> found = new HashSet<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                found.add(resultSet.getInt(1));
+            }
+        }
+        return found;
+    }
+
+    private static void bindIfFree(PreparedStatement statement, int aid, Date d, int minute, String caregiver,
+                                   String patient, String vaccine) throws SQLException {
+        statement.setInt(1, aid);
+        statement.setInt(2, minute);
+        statement.setString(3, patient);
+        statement.setString(4, vaccine);
+        statement.setDate(5, d);
+        statement.setString(6, caregiver);
+        statement.setInt(7, minute);
+        statement.setInt(8, minute);
+        statement.setInt(9, minute - Slots.length());
+        statement.setInt(10, minute + Slots.length());
+    }
+
+    /**
+     * The appointment, or null if there is none with that id.
+     */
+    public Appointment find(Connection con, int aid) throws SQLException {
+        PreparedStatement statement = prepare(con, SELECT_ONE);
+        statement.setInt(1, aid);
+        try (ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next() ? toAppointment(resultSet) : null;
+        }
+    }
+
+    public boolean delete(Connection con, int aid) throws SQLException {
+        PreparedStatement statement = prepare(con, DELETE);
+        statement.setInt(1, aid);
+        return statement.executeUpdate() == 1;
+    }
+
+    /**
+     * How many appointments each caregiver has between the two dates, inclusive. Caregivers
+     * without any are left out.
+     */
+    public Map<String, Integer> countByCaregiver(Connection con, Date from, Date to) throws SQLException {
+        PreparedStatement statement = prepare(con, COUNT_BY_CAREGIVER);
+        statement.setDate(1, from);
+        statement.setDate(2, to);
+        Map<String, Integer> counts = new HashMap<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                counts.put(resultSet.getString(1), resultSet.getInt(2));
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * The caregiver of the patient's latest appointment, or null if they have none.
+     */
+    public String findLatestCaregiver(Connection con, String patient) throws SQLException {
+        PreparedStatement statement = prepare(con, SELECT_LATEST_CAREGIVER);
+        statement.setString(1, patient);
+        statement.setMaxRows(1);
+        try (ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next() ? resultSet.getString(1) : null;
+        }
+    }
+
+    /**
+     * One page of a caregiver's (or patient's) appointments matching the filter, ordered by
+     * (Time, SlotStart, aid). Returns up to one row more than the page size, which tells the
+     * caller that there is a next page. The (name, Time, SlotStart) indexes cover the query.
+     */
+    public List<Appointment> findPage(Connection con, boolean caregiver, String username, AppointmentFilter filter)
+            throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT aid, Time, SlotStart, cname, pname, vname FROM Appointments WHERE ")
+                .append(caregiver ? "cname" : "pname").append(" = ?");
+        if (filter.getFrom() != null) {
+            sql.append(" AND Time >= ?");
+        }
+        if (filter.getTo() != null) {
+            sql.append(" AND Time <= ?");
+        }
+        if (filter.getVaccine() != null) {
+            sql.append(" AND vname = ?");
+        }
+        if (filter.getAfterTime() != null) {
+            sql.append(" AND (Time > ? OR (Time = ? AND (SlotStart > ? OR (SlotStart = ? AND aid > ?))))");
+        }
+        sql.append(" ORDER BY Time, SlotStart, aid");
+
+        PreparedStatement statement = prepare(con, sql.toString());
+        int i = 1;
+        statement.setString(i++, username);
+        if (filter.getFrom() != null) {
+            statement.setDate(i++, filter.getFrom());
+        }
+        if (filter.getTo() != null) {
+            statement.setDate(i++, filter.getTo());
+        }
+        if (filter.getVaccine() != null) {
+            statement.setString(i++, filter.getVaccine());
+        }
+        if (filter.getAfterTime() != null) {
+            statement.setDate(i++, filter.getAfterTime());
+            statement.setDate(i++, filter.getAfterTime());
+            statement.setInt(i++, filter.getAfterMinute());
+            statement.setInt(i++, filter.getAfterMinute());
+            statement.setInt(i, filter.getAfterId());
+        }
+        int limit = filter.getPageSize() + 1;
+        statement.setMaxRows(limit);
+        statement.setFetchSize(Math.min(limit, FETCH_SIZE));
+
+        List<Appointment> page = new ArrayList<>(Math.min(limit, FETCH_SIZE));
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                page.add(toAppointment(resultSet));
+            }
+        }
+        return page;
+    }
+
+    private static Appointment toAppointment(ResultSet resultSet) throws SQLException {
+        return new Appointment(resultSet.getInt(1), resultSet.getDate(2), resultSet.getInt(3),
+                resultSet.getString(4), resultSet.getString(5), resultSet.getString(6));
+    }
+}
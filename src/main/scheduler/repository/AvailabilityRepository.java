@@ -0,0 +1,108 @@
+package scheduler.repository;
+
+import scheduler.model.Availability;
+import scheduler.model.Caregiver;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Availabilities table.
+ */
+public class AvailabilityRepository extends Repository {
+
+    // inserts nothing, and reports 0 rows, when the shift overlaps one the caregiver already has
+    // on the date or the caregiver does not exist
+    private static final String INSERT_IF_MISSING = "INSERT INTO Availabilities (Time, Username, StartMinute, EndMinute) " +
+            "SELECT ?, c.Username, ?, ? FROM Caregivers c WHERE c.Username = ? " +
+            "AND NOT EXISTS (SELECT 1 FROM Availabilities a WHERE a.Time = ? AND a.Username = c.Username " +
+            "AND a.StartMinute < ? AND a.EndMinute > ?)";
+    // one row per appointment, or one with a null SlotStart for a shift without any
+    private static final String JOIN_BOOKED = "FROM Availabilities a LEFT JOIN Appointments p " +
+            "ON p.Time = a.Time AND p.cname = a.Username AND p.SlotStart >= a.StartMinute AND p.SlotStart < a.EndMinute ";
+    private static final String SELECT_DAY = "SELECT a.Username, a.StartMinute, a.EndMinute, p.SlotStart " +
+            JOIN_BOOKED + "WHERE a.Time = ? ORDER BY a.Username, a.StartMinute";
+    private static final String SELECT_RANGE = "SELECT a.Username, a.StartMinute, a.EndMinute, p.SlotStart, a.Time " +
+            JOIN_BOOKED + "WHERE a.Time >= ? AND a.Time <= ? ORDER BY a.Time, a.Username, a.StartMinute";
+
+    /**
+     * Inserts availabilities through batched statements. Shifts that overlap one the caregiver
+     * already has on the date, or that name an unknown caregiver, are skipped instead of failing
+     * the batch. The caller owns the transaction.
+     */
+    public Caregiver.UploadResult insertMissing(Connection con, List<Availability> rows) throws SQLException {
+        int inserted = countWritten(executeBatch(con, INSERT_IF_MISSING, rows, (statement, row) -> {
+            statement.setDate(1, row.getTime());
+            statement.setInt(2, row.getStartMinute());
+            statement.setInt(3, row.getEndMinute());
+            statement.setString(4, row.getCaregiverName());
+            statement.setDate(5, row.getTime());
+            statement.setInt(6, row.getEndMinute());
+            statement.setInt(7, row.getStartMinute());
+        }));
+        return new Caregiver.UploadResult(inserted, rows.size() - inserted);
+    }
+
+    /**
+     * Every caregiver's shifts on the date, with the minutes already booked in each.
+     */
+    public List<Availability> findDay(Connection con, Date d) throws SQLException {
+        PreparedStatement statement = prepare(con, SELECT_DAY);
+        statement.setDate(1, d);
+        try (ResultSet resultSet = statement.executeQuery()) {
+            return readShifts(resultSet, d);
+        }
+    }
+
+    /**
+     * Every caregiver's shifts on the dates from from to to, inclusive, with the minutes already
+     * booked in each, ordered by date, caregiver and start.
+     */
+    public List<Availability> findRange(Connection con, Date from, Date to) throws SQLException {
+        PreparedStatement statement = prepare(con, SELECT_RANGE);
+        statement.setDate(1, from);
+        statement.setDate(2, to);
+        try (ResultSet resultSet = statement.executeQuery()) {
+            return readShifts(resultSet, null);
+        }
+    }
+
+    // folds the joined rows into one entry per shift, i.e. per date, caregiver and start minute;
+    // the date comes from column 5 unless d is given
+    private static List<Availability> readShifts(ResultSet resultSet, Date d) throws SQLException {
+        List<Availability> shifts = new ArrayList<>();
+        Date time = null;
+        String caregiver = null;
+        int start = 0;
+        int end = 0;
+        List<Integer> booked = null;
+        while (resultSet.next()) {
+            String name = resultSet.getString(1);
+            Date rowTime = d != null ? d : resultSet.getDate(5);
+            int rowStart = resultSet.getInt(2);
+            if (!name.equals(caregiver) || !rowTime.equals(time) || rowStart != start) {
+                if (caregiver != null) {
+                    shifts.add(new Availability(time, caregiver, start, end, booked));
+                }
+                time = rowTime;
+                caregiver = name;
+                start = rowStart;
+                end = resultSet.getInt(3);
+                booked = new ArrayList<>(1);
+            }
+            int minute = resultSet.getInt(4);
+            if (!resultSet.wasNull()) {
+                booked.add(minute);
+            }
+        }
+        if (caregiver != null) {
+            shifts.add(new Availability(time, caregiver, start, end, booked));
+        }
+        return shifts;
+    }
+}
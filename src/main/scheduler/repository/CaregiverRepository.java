@@ -0,0 +1,11 @@
+package scheduler.repository;
+
+/**
+ * The Caregivers table. Their availability lives in {@link AvailabilityRepository}.
+ */
+public class CaregiverRepository extends AccountRepository {
+
+    public CaregiverRepository() {
+        super("Caregivers");
+    }
+}
@@ -0,0 +1,154 @@
+package scheduler.repository;
+
+import scheduler.db.Settings;
+import scheduler.model.ExportFilter;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads whole tables for the export command, row by row.
+ *
+ * Rows come from one forward-only, read-only cursor fetched ExportFetchSize (default 10000) rows
+ * per round trip and are handed on as they arrive, so an export holds one fetch of rows in
+ * memory however large the table. Each table is read in primary key order, which the database
+ * can do without sorting.
+ */
+public class ExportRepository extends Repository {
+
+    private static final String FETCH_SIZE_ENV = "ExportFetchSize";
+
+    private static final int fetchSize = Settings.getInt(FETCH_SIZE_ENV, 10_000, 1, Integer.MAX_VALUE);
+
+    private static final Map<String, Table> TABLES = Map.of(
+            "appointments", new Table("Appointments",
+                    List.of("aid", "Time", "SlotStart", "cname", "pname", "vname"), "aid", "Time", "cname", "vname"),
+            "availabilities", new Table("Availabilities",
+                    List.of("Time", "Username", "StartMinute", "EndMinute"), "Time, Username", "Time", "Username", null),
+            "vaccines", new Table("Vaccines",
+                    List.of("Name", "Doses"), "Name", null, null, "Name"));
+
+    /**
+     * Takes the exported rows one at a time.
+     */
+    @FunctionalInterface
+    public interface RowSink {
+        /**
+         * The array holds the row's columns and is reused for the next row.
+         */
+        void accept(Object[] row) throws IOException;
+    }
+
+    public static boolean isTable(String name) {
+        return TABLES.containsKey(name);
+    }
+
+    public static List<String> columns(String name) {
+        return table(name).columns;
+    }
+
+    /**
+     * Hands every row of the table that matches the filter to the sink and returns how many
+     * there were. Throws IllegalArgumentException if the table cannot be filtered that way,
+     * e.g. vaccines by date.
+     */
+    public long export(Connection con, String name, ExportFilter filter, RowSink sink)
+            throws SQLException, IOException {
+        Table table = table(name);
+        // prepared statements are forward-only and read-only unless asked otherwise
+        PreparedStatement statement = prepare(con, select(table, name, filter));
+        int i = 1;
+        if (filter.getFrom() != null) {
+            statement.setDate(i++, filter.getFrom());
+        }
+        if (filter.getTo() != null) {
+            statement.setDate(i++, filter.getTo());
+        }
+        if (filter.getCaregiver() != null) {
+            statement.setString(i++, filter.getCaregiver());
+        }
+        if (filter.getVaccine() != null) {
+            statement.setString(i, filter.getVaccine());
+        }
+        statement.setFetchSize(fetchSize);
+
+        Object[] row = new Object[table.columns.size()];
+        long rows = 0;
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                for (int c = 0; c < row.length; c++) {
+                    row[c] = resultSet.getObject(c + 1);
+                }
+                sink.accept(row);
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Throws IllegalArgumentException if the table cannot be filtered that way, so a command
+     * can check its options before creating the file.
+     */
+    public static void checkFilter(String name, ExportFilter filter) {
+        select(table(name), name, filter);
+    }
+
+    private static String select(Table table, String name, ExportFilter filter) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(String.join(", ", table.columns))
+                .append(" FROM ").append(table.name).append(" WHERE 1 = 1");
+        if (filter.getFrom() != null) {
+            sql.append(" AND ").append(column(table.timeColumn, name, "from")).append(" >= ?");
+        }
+        if (filter.getTo() != null) {
+            sql.append(" AND ").append(column(table.timeColumn, name, "to")).append(" <= ?");
+        }
+        if (filter.getCaregiver() != null) {
+            sql.append(" AND ").append(column(table.caregiverColumn, name, "caregiver")).append(" = ?");
+        }
+        if (filter.getVaccine() != null) {
+            sql.append(" AND ").append(column(table.vaccineColumn, name, "vaccine")).append(" = ?");
+        }
+        return sql.append(" ORDER BY ").append(table.order).toString();
+    }
+
+    private static Table table(String name) {
+        Table table = TABLES.get(name);
+        if (table == null) {
+            throw new IllegalArgumentException("Unknown table: " + name);
+        }
+        return table;
+    }
+
+    private static String column(String column, String table, String option) {
+        if (column == null) {
+            throw new IllegalArgumentException(table + " cannot be filtered by " + option);
+        }
+        return column;
+    }
+
+    private static class Table {
+        private final String name;
+        private final List<String> columns;
+        private final String order;
+        // the columns the from/to, caregiver and vaccine options filter on, or null if they do not apply
+        private final String timeColumn;
+        private final String caregiverColumn;
+        private final String vaccineColumn;
+
+        Table(String name, List<String> columns, String order, String timeColumn, String caregiverColumn,
+              String vaccineColumn) {
+            this.name = name;
+            this.columns = columns;
+            this.order = order;
+            this.timeColumn = timeColumn;
+            this.caregiverColumn = caregiverColumn;
+            this.vaccineColumn = vaccineColumn;
+        }
+    }
+}
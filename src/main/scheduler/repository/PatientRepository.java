@@ -0,0 +1,11 @@
+package scheduler.repository;
+
+/**
+ * The Patients table.
+ */
+public class PatientRepository extends AccountRepository {
+
+    public PatientRepository() {
+        super("Patients");
+    }
+}
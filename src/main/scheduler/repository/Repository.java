@@ -0,0 +1,101 @@
+package scheduler.repository;
+
+import scheduler.db.AsyncExecutor;
+import scheduler.db.StatementCache;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shared plumbing of the repositories.
+ *
+ * Every repository method takes the connection to run on, so callers decide what shares a
+ * transaction. Statements come from the connection's statement cache and must not be closed;
+ * result sets are always closed with try-with-resources.
+ */
+abstract class Repository {
+
+    // rows sent per round trip by executeBatch
+    static final int BATCH_SIZE = 500;
+
+    /**
+     * Sets the parameters of a statement for one row of a batch.
+     */
+    @FunctionalInterface
+    interface Binder<T> {
+        void bind(PreparedStatement statement, T row) throws SQLException;
+    }
+
+    static PreparedStatement prepare(Connection con, String sql) throws SQLException {
+        if (con instanceof StatementCache) {
+            return AsyncExecutor.track(((StatementCache) con).prepareCached(sql));
+        }
+        // not from the pool: the statement is closed along with the connection
+        return AsyncExecutor.track(con.prepareStatement(sql));
+    }
+
+    /**
+     * Runs the statement once for every row, BATCH_SIZE rows per round trip, and returns the
+     * update count of each row in order. The caller owns the transaction. When a row fails, the
+     * BatchUpdateException thrown reports the counts of all the rows, with EXECUTE_FAILED for
+     * the rows the driver did not run.
+     */
+    static <T> int[] executeBatch(Connection con, String sql, List<T> rows, Binder<T> binder) throws SQLException {
+        PreparedStatement statement = prepare(con, sql);
+        int[] counts = new int[rows.size()];
+        int done = 0;
+        try {
+            int pending = 0;
+            for (T row : rows) {
+                binder.bind(statement, row);
+                statement.addBatch();
+                if (++pending == BATCH_SIZE) {
+                    System.arraycopy(statement.executeBatch(), 0, counts, done, pending);
+                    done += pending;
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                System.arraycopy(statement.executeBatch(), 0, counts, done, pending);
+            }
+        } catch (BatchUpdateException e) {
+            // the driver only reports the chunk that failed, and may stop at the failing row
+            Arrays.fill(counts, done, counts.length, Statement.EXECUTE_FAILED);
+            int[] chunk = e.getUpdateCounts();
+            if (chunk != null) {
+                System.arraycopy(chunk, 0, counts, done, Math.min(chunk.length, counts.length - done));
+            }
+            throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), counts, e);
+        } finally {
+            // the statement is reused, so never leave a half-built batch behind
+            statement.clearBatch();
+        }
+        return counts;
+    }
+
+    /**
+     * How many rows of a batch wrote something.
+     */
+    static int countWritten(int[] counts) {
+        int written = 0;
+        for (int count : counts) {
+            if (wrote(count)) {
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Whether a batched row with this update count wrote something.
+     */
+    static boolean wrote(int count) {
+        // some drivers only report that a batched row succeeded, not how many rows it touched
+        return count > 0 || count == Statement.SUCCESS_NO_INFO;
+    }
+}
@@ -0,0 +1,106 @@
+package scheduler.repository;
+
+import scheduler.model.Vaccine;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Vaccines table.
+ */
+public class VaccineRepository extends Repository {
+
+    private static final String SELECT_ONE = "SELECT Name, Doses FROM Vaccines WHERE Name = ?";
+    private static final String SELECT_ALL = "SELECT Name, Doses FROM Vaccines";
+    private static final String INSERT = "INSERT INTO Vaccines (Name, Doses) VALUES (?, ?)";
+    // every update bumps the row's Version, which is what findChangeStamp() adds up
+    private static final String ADD_DOSES = "UPDATE Vaccines SET Doses = Doses + ?, Version = Version + 1 WHERE Name = ?";
+    private static final String APPLY_DELTA =
+            "UPDATE Vaccines SET Doses = Doses + ?, Version = Version + 1 WHERE Name = ? AND Doses + ? >= 0";
+    private static final String SELECT_CHANGE_STAMP = "SELECT COUNT(*) + COALESCE(SUM(Version), 0) FROM Vaccines";
+
+    /**
+     * The vaccine, or null if there is none by that name.
+     */
+    public Vaccine find(Connection con, String name) throws SQLException {
+        PreparedStatement statement = prepare(con, SELECT_ONE);
+        statement.setString(1, name);
+        try (ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next() ? toVaccine(resultSet) : null;
+        }
+    }
+
+    public List<Vaccine> findAll(Connection con) throws SQLException {
+        List<Vaccine> vaccines = new ArrayList<>();
+        try (ResultSet resultSet = prepare(con, SELECT_ALL).executeQuery()) {
+            while (resultSet.next()) {
+                vaccines.add(toVaccine(resultSet));
+            }
+        }
+        return vaccines;
+    }
+
+    /**
+     * A number that grows whenever a vaccine is added or its doses change: the row count plus
+     * the sum of the rows' versions. Vaccines are never deleted, so it never repeats.
+     */
+    public long findChangeStamp(Connection con) throws SQLException {
+        try (ResultSet resultSet = prepare(con, SELECT_CHANGE_STAMP).executeQuery()) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    public void insert(Connection con, String name, int doses) throws SQLException {
+        PreparedStatement statement = prepare(con, INSERT);
+        statement.setString(1, name);
+        statement.setInt(2, doses);
+        statement.executeUpdate();
+    }
+
+    /**
+     * Adds delta (which may be negative) to the stored doses of a vaccine in one statement.
+     * Returns false if the vaccine does not exist or a decrement would go below zero.
+     */
+    public boolean applyDelta(Connection con, String name, int delta) throws SQLException {
+        PreparedStatement statement = prepare(con, APPLY_DELTA);
+        statement.setInt(1, delta);
+        statement.setString(2, name);
+        statement.setInt(3, delta);
+        return statement.executeUpdate() == 1;
+    }
+
+    /**
+     * Adds doses to several vaccines with one batched update, then creates the vaccines that did
+     * not exist with one batched insert. The caller owns the transaction.
+     */
+    public void addDoses(Connection con, Map<String, Integer> doses) throws SQLException {
+        List<String> names = new ArrayList<>(doses.keySet());
+        int[] updated = executeBatch(con, ADD_DOSES, names, (statement, name) -> {
+            statement.setInt(1, doses.get(name));
+            statement.setString(2, name);
+        });
+
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            if (updated[i] == 0) {
+                missing.add(names.get(i));
+            }
+        }
+        if (!missing.isEmpty()) {
+            executeBatch(con, INSERT, missing, (statement, name) -> {
+                statement.setString(1, name);
+                statement.setInt(2, doses.get(name));
+            });
+        }
+    }
+
+    private static Vaccine toVaccine(ResultSet resultSet) throws SQLException {
+        return new Vaccine.VaccineBuilder(resultSet.getString(1), resultSet.getInt(2)).build();
+    }
+}
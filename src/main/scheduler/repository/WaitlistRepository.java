@@ -0,0 +1,125 @@
+package scheduler.repository;
+
+import scheduler.model.WaitlistEntry;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Waitlist table. Entries are served by Priority, highest first, and then in the order
+ * they were queued.
+ */
+public class WaitlistRepository extends Repository {
+
+    private static final String ORDER = " ORDER BY Priority DESC, QueuedAt, wid";
+
+    private static final String INSERT =
+            "INSERT INTO Waitlist (wid, pname, vname, FromDate, ToDate, QueuedAt) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_PRIORITY = "UPDATE Waitlist SET Priority = ? WHERE pname = ? AND vname = ?";
+    private static final String DELETE_ONE = "DELETE FROM Waitlist WHERE wid = ?";
+    private static final String DELETE_BY_PATIENT = "DELETE FROM Waitlist WHERE pname = ? AND vname = ?";
+    // the position counts the entries for the same vaccine that are served first
+    private static final String SELECT_BY_PATIENT = "SELECT w.wid, w.pname, w.vname, w.FromDate, w.ToDate, " +
+            "(SELECT COUNT(*) FROM Waitlist o WHERE o.vname = w.vname AND o.ToDate >= ? AND (o.Priority > w.Priority " +
+            "OR (o.Priority = w.Priority AND (o.QueuedAt < w.QueuedAt " +
+            "OR (o.QueuedAt = w.QueuedAt AND o.wid < w.wid))))) " +
+            "FROM Waitlist w WHERE w.pname = ? ORDER BY w.vname";
+
+    public void insert(Connection con, int wid, String patient, String vaccine, Date from, Date to)
+            throws SQLException {
+        PreparedStatement statement = prepare(con, INSERT);
+        statement.setInt(1, wid);
+        statement.setString(2, patient);
+        statement.setString(3, vaccine);
+        statement.setDate(4, from);
+        statement.setDate(5, to);
+        statement.setTimestamp(6, new Timestamp(System.currentTimeMillis()));
+        statement.executeUpdate();
+    }
+
+    /**
+     * Sets the priority of the patient's entry for the vaccine. Returns false if there is none.
+     */
+    public boolean setPriority(Connection con, String patient, String vaccine, int priority) throws SQLException {
+        PreparedStatement statement = prepare(con, UPDATE_PRIORITY);
+        statement.setInt(1, priority);
+        statement.setString(2, patient);
+        statement.setString(3, vaccine);
+        return statement.executeUpdate() > 0;
+    }
+
+    public boolean delete(Connection con, String patient, String vaccine) throws SQLException {
+        PreparedStatement statement = prepare(con, DELETE_BY_PATIENT);
+        statement.setString(1, patient);
+        statement.setString(2, vaccine);
+        return statement.executeUpdate() > 0;
+    }
+
+    /**
+     * Deletes the entries through one batched statement and returns how many rows each delete
+     * removed: 0 means another session got there first.
+     */
+    public int[] deleteAll(Connection con, List<Integer> wids) throws SQLException {
+        return executeBatch(con, DELETE_ONE, wids, (statement, wid) -> statement.setInt(1, wid));
+    }
+
+    /**
+     * The patient's entries, with their position among the entries still open on today.
+     */
+    public List<WaitlistEntry> findByPatient(Connection con, String patient, Date today) throws SQLException {
+        PreparedStatement statement = prepare(con, SELECT_BY_PATIENT);
+        statement.setDate(1, today);
+        statement.setString(2, patient);
+        List<WaitlistEntry> entries = new ArrayList<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                entries.add(new WaitlistEntry(resultSet.getInt(1), resultSet.getString(2), resultSet.getString(3),
+                        resultSet.getDate(4), resultSet.getDate(5), resultSet.getInt(6)));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Up to limit entries still open on today, in the order they are served. If from and to are
+     * given only entries whose range overlaps them are returned, and if vaccine is given only
+     * entries for it.
+     */
+    public List<WaitlistEntry> findOpen(Connection con, Date today, Date from, Date to, String vaccine, int limit)
+            throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT wid, pname, vname, FromDate, ToDate FROM Waitlist WHERE ToDate >= ?");
+        if (from != null) {
+            sql.append(" AND ToDate >= ? AND FromDate <= ?");
+        }
+        if (vaccine != null) {
+            sql.append(" AND vname = ?");
+        }
+        sql.append(ORDER);
+
+        PreparedStatement statement = prepare(con, sql.toString());
+        int i = 1;
+        statement.setDate(i++, today);
+        if (from != null) {
+            statement.setDate(i++, from);
+            statement.setDate(i++, to);
+        }
+        if (vaccine != null) {
+            statement.setString(i, vaccine);
+        }
+        statement.setMaxRows(limit);
+        List<WaitlistEntry> entries = new ArrayList<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                entries.add(new WaitlistEntry(resultSet.getInt(1), resultSet.getString(2), resultSet.getString(3),
+                        resultSet.getDate(4), resultSet.getDate(5), -1));
+            }
+        }
+        return entries;
+    }
+}
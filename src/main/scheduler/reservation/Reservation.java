@@ -0,0 +1,84 @@
+package scheduler.reservation;
+
+import java.sql.Date;
+
+/**
+ * The result of one reservation attempt. Only a BOOKED reservation carries an
+ * appointment id and a caregiver.
+ */
+public class Reservation {
+
+    public enum Status {
+        NO_SUCH_VACCINE,
+        OUT_OF_STOCK,
+        NO_SLOT,
+        BOOKED
+    }
+
+    private final Status status;
+    private final Date date;
+    private final String vaccineName;
+    private final int appointmentId;
+    private final String caregiverName;
+    // when the appointment starts, in minutes since midnight
+    private final int minute;
+
+    private Reservation(Status status, Date date, String vaccineName, int appointmentId, String caregiverName,
+                        int minute) {
+        this.status = status;
+        this.date = date;
+        this.vaccineName = vaccineName;
+        this.appointmentId = appointmentId;
+        this.caregiverName = caregiverName;
+        this.minute = minute;
+    }
+
+    static Reservation failed(Status status, Date date, String vaccineName) {
+        return new Reservation(status, date, vaccineName, -1, null, -1);
+    }
+
+    static Reservation booked(Date date, String vaccineName, int appointmentId, String caregiverName, int minute) {
+        return new Reservation(Status.BOOKED, date, vaccineName, appointmentId, caregiverName, minute);
+    }
+
+    // Getters
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isBooked() {
+        return status == Status.BOOKED;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public String getVaccineName() {
+        return vaccineName;
+    }
+
+    public int getAppointmentId() {
+        return appointmentId;
+    }
+
+    public String getCaregiverName() {
+        return caregiverName;
+    }
+
+    public int getMinute() {
+        return minute;
+    }
+
+    @Override
+    public String toString() {
+        return "Reservation{" +
+                "status=" + status +
+                ", date=" + date +
+                ", vaccineName='" + vaccineName + '\'' +
+                ", appointmentId=" + appointmentId +
+                ", caregiverName='" + caregiverName + '\'' +
+                ", minute=" + minute +
+                '}';
+    }
+}
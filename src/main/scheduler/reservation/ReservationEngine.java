@@ -0,0 +1,128 @@
+package scheduler.reservation;
+
+import scheduler.db.AsyncExecutor;
+import scheduler.db.ConnectionManager;
+import scheduler.db.IdAllocator;
+import scheduler.inventory.DoseLedger;
+import scheduler.repository.AppointmentRepository;
+import scheduler.schedule.ScheduleIndex;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Books appointments atomically.
+ *
+ * A reservation takes a dose from the DoseLedger and claims a free slot from the
+ * ScheduleIndex, which picks the caregiver with its AssignmentStrategy, so neither step normally
+ * touches the database. The appointment is then inserted with a single guarded statement that
+ * only succeeds if the slot is still in the caregiver's shift and unbooked on that date. The
+ * unique (Time, cname, SlotStart) constraint stops a concurrent booking from another process, and
+ * a serialization failure is retried. If the index was out of date the next free slot is tried.
+ * If no appointment is made the dose goes back to the ledger.
+ */
+public class ReservationEngine {
+
+    private static final int MAX_ATTEMPTS = 3;
+    // how many caregivers to try when the index turns out to be stale
+    private static final int MAX_CANDIDATES = 5;
+
+    private final AppointmentRepository appointments = new AppointmentRepository();
+
+    public Reservation reserve(String patientName, Date date, String vaccineName) throws SQLException {
+        return reserve(patientName, date, vaccineName, null);
+    }
+
+    /**
+     * Books the slot containing the minute, or the earliest free slot if minute is null.
+     */
+    public Reservation reserve(String patientName, Date date, String vaccineName, Integer minute) throws SQLException {
+        ScheduleIndex index = ScheduleIndex.getInstance();
+        // a date the index has to load is read while the dose is taken rather than after it
+        CompletableFuture<Void> schedule = AsyncExecutor.supplyIf(!index.isFresh(date), () -> {
+            index.prefetch(date, patientName);
+            return null;
+        });
+        DoseLedger ledger = DoseLedger.getInstance();
+        DoseLedger.Take take;
+        try {
+            take = ledger.take(vaccineName);
+        } catch (SQLException | RuntimeException e) {
+            schedule.cancel(false);
+            throw e;
+        }
+        if (take == DoseLedger.Take.NO_SUCH_VACCINE) {
+            schedule.cancel(false);
+            return Reservation.failed(Reservation.Status.NO_SUCH_VACCINE, date, vaccineName);
+        }
+        if (take == DoseLedger.Take.OUT_OF_STOCK) {
+            schedule.cancel(false);
+            return Reservation.failed(Reservation.Status.OUT_OF_STOCK, date, vaccineName);
+        }
+
+        boolean booked = false;
+        try {
+            // usually served from memory; an id is never reused even if the booking fails
+            int aid = IdAllocator.forAppointments().nextId();
+            AsyncExecutor.await(schedule);
+            ScheduleIndex.Claim claim;
+            for (int tries = 0; tries < MAX_CANDIDATES && (claim = index.claim(date, patientName, minute)) != null; tries++) {
+                boolean inserted = false;
+                try {
+                    inserted = insertWithRetry(aid, claim, patientName, date, vaccineName);
+                } finally {
+                    if (!inserted) {
+                        // booked by someone else, or the insert failed; either way not by us
+                        index.release(date, claim);
+                    }
+                }
+                if (inserted) {
+                    booked = true;
+                    index.assigned(date, claim.getCaregiverName(), patientName);
+                    return Reservation.booked(date, vaccineName, aid, claim.getCaregiverName(), claim.getMinute());
+                }
+                // the index was stale: the slot is taken, so drop the date and look again
+                index.invalidate(date);
+            }
+            return Reservation.failed(Reservation.Status.NO_SLOT, date, vaccineName);
+        } finally {
+            if (!booked) {
+                ledger.giveBack(vaccineName, 1);
+            }
+        }
+    }
+
+    private boolean insertWithRetry(int aid, ScheduleIndex.Claim claim, String patientName, Date date,
+                                    String vaccineName) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return insert(aid, claim, patientName, date, vaccineName);
+            } catch (SQLException e) {
+                if (!ConnectionManager.getBackend().getDialect().isSerializationFailure(e) || attempt == MAX_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    // returns false if the slot turned out not to be free
+    private boolean insert(int aid, ScheduleIndex.Claim claim, String patientName, Date date, String vaccineName)
+            throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            return appointments.insertIfFree(con, aid, date, claim.getMinute(), claim.getCaregiverName(), patientName,
+                    vaccineName);
+        } catch (SQLException e) {
+            if (ConnectionManager.getBackend().getDialect().isUniqueViolation(e)) {
+                // another process booked the slot between our check and our insert
+                return false;
+            }
+            throw e;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+}
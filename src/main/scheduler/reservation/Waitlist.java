@@ -0,0 +1,341 @@
+package scheduler.reservation;
+
+import scheduler.db.ConnectionManager;
+import scheduler.db.IdAllocator;
+import scheduler.inventory.DoseLedger;
+import scheduler.model.Appointment;
+import scheduler.model.WaitlistEntry;
+import scheduler.repository.AppointmentRepository;
+import scheduler.repository.VaccineRepository;
+import scheduler.repository.WaitlistRepository;
+import scheduler.schedule.ScheduleIndex;
+import scheduler.util.DateSpec;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Patients waiting for a dose of a vaccine on any date in a range, and the matcher that books
+ * them when capacity arrives.
+ *
+ * Callers run the matcher after adding availability (for the dates added) or doses (for the
+ * vaccine). It reads the open entries that could use the new capacity in the order they are
+ * served, and for each takes a dose from the DoseLedger and claims the earliest free slot in
+ * its range from the ScheduleIndex, as a reservation would. The appointments are then inserted
+ * and the entries deleted through batched statements in one transaction. If another process
+ * matched one of the entries in the meantime, the whole batch is rolled back and the entries
+ * wait for the next run. Doses and slots that were not used go back.
+ */
+public class Waitlist {
+
+    public enum Join {
+        JOINED,
+        ALREADY_WAITING,
+        NO_SUCH_VACCINE
+    }
+
+    // entries looked at per run, so one run stays one bounded transaction
+    private static final int MAX_ENTRIES = 500;
+
+    private final WaitlistRepository waitlist = new WaitlistRepository();
+    private final AppointmentRepository appointments = new AppointmentRepository();
+    private final VaccineRepository vaccines = new VaccineRepository();
+
+    /**
+     * Puts the patient on the waitlist for the vaccine on any date from from to to, inclusive.
+     */
+    public Join join(String patientName, String vaccineName, Date from, Date to) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            if (vaccines.find(con, vaccineName) == null) {
+                return Join.NO_SUCH_VACCINE;
+            }
+            waitlist.insert(con, IdAllocator.forWaitlist().nextId(), patientName, vaccineName, from, to);
+            return Join.JOINED;
+        } catch (SQLException e) {
+            if (ConnectionManager.getBackend().getDialect().isUniqueViolation(e)) {
+                return Join.ALREADY_WAITING;
+            }
+            throw e;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    /**
+     * Moves the patient's entry for the vaccine ahead of every entry with a lower priority;
+     * entries start at 0. Returns false if the patient is not waiting for the vaccine.
+     */
+    public boolean prioritize(String patientName, String vaccineName, int priority) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            return waitlist.setPriority(con, patientName, vaccineName, priority);
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    /**
+     * Takes the patient off the waitlist for the vaccine. Returns false if they were not on it.
+     */
+    public boolean leave(String patientName, String vaccineName) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            return waitlist.delete(con, patientName, vaccineName);
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    /**
+     * The patient's entries with their positions, including ones whose dates have passed.
+     */
+    public List<WaitlistEntry> entries(Connection con, String patientName) throws SQLException {
+        return waitlist.findByPatient(con, patientName, today());
+    }
+
+    /**
+     * Books waiting patients whose range includes one of the dates on those dates. Returns how
+     * many were booked.
+     */
+    public int matchDates(Collection<Date> dates) throws SQLException {
+        if (dates.isEmpty()) {
+            return 0;
+        }
+        Date from = Collections.min(dates);
+        Date to = Collections.max(dates);
+        return match(from, to, null, new HashSet<>(dates));
+    }
+
+    /**
+     * Books patients waiting for the vaccines on the earliest free date in their range. Returns
+     * how many were booked.
+     */
+    public int matchVaccines(Collection<String> vaccineNames) throws SQLException {
+        int booked = 0;
+        for (String vaccineName : vaccineNames) {
+            booked += match(null, null, vaccineName, null);
+        }
+        return booked;
+    }
+
+    // one run at a time in this process, so two runs never claim for the same entry
+    private synchronized int match(Date from, Date to, String vaccineName, Set<Date> dates) throws SQLException {
+        Date today = today();
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            List<WaitlistEntry> entries = waitlist.findOpen(con, today, from, to, vaccineName, MAX_ENTRIES);
+            if (entries.isEmpty()) {
+                return 0;
+            }
+            List<Match> matches = claim(entries, today, dates);
+            if (matches.isEmpty()) {
+                return 0;
+            }
+            boolean[] inserted = new boolean[matches.size()];
+            con.setAutoCommit(false);
+            try {
+                inserted = store(con, matches);
+            } finally {
+                con.setAutoCommit(true);
+                settle(matches, inserted);
+            }
+            int booked = 0;
+            for (boolean b : inserted) {
+                booked += b ? 1 : 0;
+            }
+            return booked;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // takes a dose and a slot for every entry that can have both
+    private List<Match> claim(List<WaitlistEntry> entries, Date today, Set<Date> dates) throws SQLException {
+        ScheduleIndex index = ScheduleIndex.getInstance();
+        DoseLedger ledger = DoseLedger.getInstance();
+        // what ran out during this run, so later entries do not ask again
+        Set<String> outOfStock = new HashSet<>();
+        Set<Date> full = new HashSet<>();
+        List<Match> matches = new ArrayList<>();
+        preload(index, entries, today, dates);
+        try {
+            for (WaitlistEntry entry : entries) {
+                if (outOfStock.contains(entry.getVaccineName())) {
+                    continue;
+                }
+                List<Date> candidates = candidates(entry, today, dates, full);
+                if (candidates.isEmpty()) {
+                    continue;
+                }
+                if (ledger.take(entry.getVaccineName()) != DoseLedger.Take.TAKEN) {
+                    outOfStock.add(entry.getVaccineName());
+                    continue;
+                }
+                Match match = null;
+                try {
+                    for (Date d : candidates) {
+                        ScheduleIndex.Claim claim = index.claim(d, entry.getPatientName(), null);
+                        if (claim != null) {
+                            int aid;
+                            try {
+                                aid = IdAllocator.forAppointments().nextId();
+                            } catch (SQLException e) {
+                                index.release(d, claim);
+                                throw e;
+                            }
+                            match = new Match(entry, d, claim, aid);
+                            break;
+                        }
+                        full.add(d);
+                    }
+                } finally {
+                    if (match == null) {
+                        ledger.giveBack(entry.getVaccineName(), 1);
+                    }
+                }
+                if (match != null) {
+                    matches.add(match);
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            settle(matches, new boolean[matches.size()]);
+            throw e;
+        }
+        return matches;
+    }
+
+    // reads every date the entries could be booked on with a query per range of dates up front,
+    // rather than one query per date as each is claimed, which would all run under the lock
+    private static void preload(ScheduleIndex index, List<WaitlistEntry> entries, Date today, Set<Date> dates)
+            throws SQLException {
+        LocalDate first = null;
+        LocalDate last = null;
+        for (WaitlistEntry entry : entries) {
+            LocalDate from = entry.getFrom().before(today) ? today.toLocalDate() : entry.getFrom().toLocalDate();
+            LocalDate to = entry.getTo().toLocalDate();
+            if (dates == null && to.isAfter(from.plusDays(DateSpec.MAX_DATES - 1))) {
+                to = from.plusDays(DateSpec.MAX_DATES - 1);
+            }
+            if (!to.isBefore(from)) {
+                first = first == null || from.isBefore(first) ? from : first;
+                last = last == null || to.isAfter(last) ? to : last;
+            }
+        }
+        if (first == null) {
+            return;
+        }
+        if (dates != null) {
+            // only the given dates are candidates
+            LocalDate min = Collections.min(dates).toLocalDate();
+            LocalDate max = Collections.max(dates).toLocalDate();
+            first = first.isBefore(min) ? min : first;
+            last = last.isAfter(max) ? max : last;
+        }
+        if (!last.isBefore(first)) {
+            index.preload(Date.valueOf(first), Date.valueOf(last));
+        }
+    }
+
+    // the dates the entry could be booked on, earliest first
+    private static List<Date> candidates(WaitlistEntry entry, Date today, Set<Date> dates, Set<Date> full) {
+        List<Date> candidates = new ArrayList<>();
+        if (dates != null) {
+            for (Date d : dates) {
+                if (!d.before(today) && !d.before(entry.getFrom()) && !d.after(entry.getTo()) && !full.contains(d)) {
+                    candidates.add(d);
+                }
+            }
+            Collections.sort(candidates);
+            return candidates;
+        }
+        LocalDate first = entry.getFrom().before(today) ? today.toLocalDate() : entry.getFrom().toLocalDate();
+        LocalDate last = entry.getTo().toLocalDate();
+        for (LocalDate d = first; !d.isAfter(last) && candidates.size() < DateSpec.MAX_DATES; d = d.plusDays(1)) {
+            Date date = Date.valueOf(d);
+            if (!full.contains(date)) {
+                candidates.add(date);
+            }
+        }
+        return candidates;
+    }
+
+    // inserts the appointments and deletes their entries in the caller's transaction
+    private boolean[] store(Connection con, List<Match> matches) throws SQLException {
+        List<Appointment> rows = new ArrayList<>(matches.size());
+        for (Match match : matches) {
+            rows.add(new Appointment(match.aid, match.date, match.claim.getMinute(), match.claim.getCaregiverName(),
+                    match.entry.getPatientName(), match.entry.getVaccineName()));
+        }
+        try {
+            boolean[] inserted = appointments.insertAllIfFree(con, rows);
+            List<Integer> wids = new ArrayList<>();
+            for (int i = 0; i < matches.size(); i++) {
+                if (inserted[i]) {
+                    wids.add(matches.get(i).entry.getId());
+                }
+            }
+            if (!wids.isEmpty()) {
+                for (int count : waitlist.deleteAll(con, wids)) {
+                    if (count == 0) {
+                        // matched by another process since we read it
+                        con.rollback();
+                        return new boolean[matches.size()];
+                    }
+                }
+            }
+            con.commit();
+            return inserted;
+        } catch (SQLException e) {
+            con.rollback();
+            throw e;
+        }
+    }
+
+    // confirms the booked claims and gives back the doses and slots of the rest
+    private static void settle(List<Match> matches, boolean[] inserted) {
+        ScheduleIndex index = ScheduleIndex.getInstance();
+        DoseLedger ledger = DoseLedger.getInstance();
+        for (int i = 0; i < matches.size(); i++) {
+            Match match = matches.get(i);
+            if (inserted[i]) {
+                index.assigned(match.date, match.claim.getCaregiverName(), match.entry.getPatientName());
+            } else {
+                index.release(match.date, match.claim);
+                // the slot may have been taken by another process, so read the date again
+                index.invalidate(match.date);
+                ledger.giveBack(match.entry.getVaccineName(), 1);
+            }
+        }
+    }
+
+    private static Date today() {
+        return Date.valueOf(LocalDate.now());
+    }
+
+    private static class Match {
+        private final WaitlistEntry entry;
+        private final Date date;
+        private final ScheduleIndex.Claim claim;
+        private final int aid;
+
+        Match(WaitlistEntry entry, Date date, ScheduleIndex.Claim claim, int aid) {
+            this.entry = entry;
+            this.date = date;
+            this.claim = claim;
+            this.aid = aid;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package scheduler.schedule;
+
+import scheduler.db.ConnectionManager;
+import scheduler.repository.AppointmentRepository;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives a returning patient (e.g. for a follow-up dose) the caregiver of their latest
+ * appointment when that caregiver is free, and otherwise the least booked one.
+ *
+ * A patient's latest caregiver is read once and then tracked in memory, including the patients
+ * who have none yet, so a reservation costs at most one extra query per patient.
+ */
+public class AffinityStrategy extends LeastBookedStrategy {
+
+    // stands for "no earlier appointment"
+    private static final String NONE = "";
+
+    private final AppointmentRepository appointments = new AppointmentRepository();
+    // patient -> caregiver of their latest appointment, or NONE
+    private final Map<String, String> latest = new ConcurrentHashMap<>();
+
+    @Override
+    public String preferred(String patient, Date d) throws SQLException {
+        String caregiver = latest.get(patient);
+        if (caregiver == null) {
+            ConnectionManager cm = new ConnectionManager();
+            Connection con = cm.createConnection();
+            try {
+                caregiver = appointments.findLatestCaregiver(con, patient);
+            } finally {
+                cm.closeConnection();
+            }
+            if (caregiver == null) {
+                caregiver = NONE;
+            }
+            latest.putIfAbsent(patient, caregiver);
+        }
+        return caregiver.equals(NONE) ? null : caregiver;
+    }
+
+    @Override
+    public void assigned(String caregiver, String patient, Date d) {
+        super.assigned(caregiver, patient, d);
+        latest.put(patient, caregiver);
+    }
+
+    @Override
+    public void cancelled(String caregiver, String patient, Date d) {
+        super.cancelled(caregiver, patient, d);
+        // read again when next needed, the patient may have another appointment with someone else
+        latest.remove(patient);
+    }
+}
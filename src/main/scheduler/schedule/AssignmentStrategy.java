@@ -0,0 +1,55 @@
+package scheduler.schedule;
+
+import java.sql.Date;
+import java.sql.SQLException;
+
+/**
+ * Decides which free caregiver a reservation gets.
+ *
+ * The ScheduleIndex keeps the free caregivers of every date ordered by rank() and hands out the
+ * lowest, so a pick is O(log n). Ranks are re-read lazily: the index checks the rank of the
+ * caregiver it is about to hand out and re-queues them if it changed, so rank() must be cheap
+ * and may be called for any indexed date. Chosen with the
+ * AssignmentStrategy setting: least_booked (default), round_robin or affinity.
+ */
+public interface AssignmentStrategy {
+
+    /**
+     * The strategy with the given setting value, or null if there is none.
+     */
+    static AssignmentStrategy named(String name) {
+        switch (name) {
+            case "least_booked":
+                return new LeastBookedStrategy();
+            case "round_robin":
+                return new RoundRobinStrategy();
+            case "affinity":
+                return new AffinityStrategy();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Loads what rank() needs for the date. Called before the date is indexed.
+     */
+    default void prepare(Date d) throws SQLException {
+    }
+
+    /**
+     * The caregiver's rank on the date; lower goes first. Called with the date's lock held, so it
+     * must not touch the database.
+     */
+    long rank(String caregiver, Date d);
+
+    /**
+     * A caregiver the patient should get if they are free on the date, or null.
+     */
+    default String preferred(String patient, Date d) throws SQLException {
+        return null;
+    }
+
+    void assigned(String caregiver, String patient, Date d);
+
+    void cancelled(String caregiver, String patient, Date d);
+}
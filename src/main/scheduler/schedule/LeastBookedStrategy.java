@@ -0,0 +1,89 @@
+package scheduler.schedule;
+
+import scheduler.db.ConnectionManager;
+import scheduler.repository.AppointmentRepository;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Assigns the caregiver with the fewest appointments in the week (Monday to Sunday) of the date.
+ *
+ * A week's counts are read with one query the first time one of its dates is indexed and then
+ * kept up to date by this process's bookings and cancellations. Bookings made by other processes
+ * since are not counted; they only make the balance less even, never a booking wrong. Weeks
+ * that have ended are dropped, and at most MAX_WEEKS are kept.
+ */
+public class LeastBookedStrategy implements AssignmentStrategy {
+
+    private static final int MAX_WEEKS = 104;
+
+    private final AppointmentRepository appointments = new AppointmentRepository();
+    // Monday of the week -> caregiver -> appointments that week
+    private final Map<LocalDate, Map<String, AtomicInteger>> weeks = new ConcurrentHashMap<>();
+
+    @Override
+    public void prepare(Date d) throws SQLException {
+        LocalDate monday = monday(d);
+        if (weeks.containsKey(monday)) {
+            return;
+        }
+        Map<String, Integer> counts;
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            counts = appointments.countByCaregiver(con, Date.valueOf(monday), Date.valueOf(monday.plusDays(6)));
+        } finally {
+            cm.closeConnection();
+        }
+        Map<String, AtomicInteger> week = new ConcurrentHashMap<>();
+        counts.forEach((caregiver, n) -> week.put(caregiver, new AtomicInteger(n)));
+        weeks.putIfAbsent(monday, week);
+        evict();
+    }
+
+    // drops the weeks that have ended and, above MAX_WEEKS, the ones furthest ahead
+    private void evict() {
+        LocalDate thisWeek = monday(Date.valueOf(LocalDate.now()));
+        weeks.keySet().removeIf(monday -> monday.isBefore(thisWeek));
+        while (weeks.size() > MAX_WEEKS) {
+            weeks.keySet().stream().max(Comparator.naturalOrder()).ifPresent(weeks::remove);
+        }
+    }
+
+    @Override
+    public long rank(String caregiver, Date d) {
+        Map<String, AtomicInteger> week = weeks.get(monday(d));
+        AtomicInteger count = week == null ? null : week.get(caregiver);
+        return count == null ? 0 : count.get();
+    }
+
+    @Override
+    public void assigned(String caregiver, String patient, Date d) {
+        Map<String, AtomicInteger> week = weeks.get(monday(d));
+        if (week != null) {
+            week.computeIfAbsent(caregiver, k -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+
+    @Override
+    public void cancelled(String caregiver, String patient, Date d) {
+        Map<String, AtomicInteger> week = weeks.get(monday(d));
+        AtomicInteger count = week == null ? null : week.get(caregiver);
+        if (count != null) {
+            count.updateAndGet(n -> Math.max(0, n - 1));
+        }
+    }
+
+    private static LocalDate monday(Date d) {
+        return d.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+}
@@ -0,0 +1,30 @@
+package scheduler.schedule;
+
+import java.sql.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Assigns the free caregiver who was assigned longest ago by this process; caregivers it has not
+ * assigned yet go first. Cancellations do not move a caregiver back.
+ */
+public class RoundRobinStrategy implements AssignmentStrategy {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final Map<String, Long> lastAssigned = new ConcurrentHashMap<>();
+
+    @Override
+    public long rank(String caregiver, Date d) {
+        return lastAssigned.getOrDefault(caregiver, 0L);
+    }
+
+    @Override
+    public void assigned(String caregiver, String patient, Date d) {
+        lastAssigned.put(caregiver, clock.incrementAndGet());
+    }
+
+    @Override
+    public void cancelled(String caregiver, String patient, Date d) {
+    }
+}
@@ -0,0 +1,639 @@
+package scheduler.schedule;
+
+import scheduler.db.ConnectionManager;
+import scheduler.db.Settings;
+import scheduler.model.Availability;
+import scheduler.repository.AvailabilityRepository;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps, for every date that has been asked about, which caregivers are available and which
+ * of them still have a free slot, as bitsets over interned caregiver ids. Each of a caregiver's
+ * shifts on the date is a bitmap of its booked slots (see Slots), so finding a free slot is a
+ * bit scan.
+ *
+ * A date is loaded from the database with one query the first time it is needed and again
+ * once its entry is older than the configured TTL (ScheduleIndexTtlMs), which bounds how long
+ * changes made by other processes can go unnoticed. Searches over a range of dates load up to
+ * RANGE_DAYS missing dates per query. Dates before today are dropped once a day, and when more
+ * than ScheduleIndexMaxDays dates are held the ones loaded longest ago are dropped too. Uploads, reservations and cancellations in
+ * this process update the index as they happen.
+ *
+ * The free caregivers of a date are also queued in the order of the AssignmentStrategy, so
+ * claim() hands out the best one in O(log n). Ranks are not pushed to every date when a booking
+ * changes them; claim() re-checks the rank of the entry it is about to hand out and re-queues it
+ * if it is out of date, and a cancellation re-queues the caregiver on that date only.
+ */
+public class ScheduleIndex {
+
+    private static final String TTL_ENV = "ScheduleIndexTtlMs";
+    private static final String STRATEGY_ENV = "AssignmentStrategy";
+    private static final String MAX_DAYS_ENV = "ScheduleIndexMaxDays";
+
+    // dates read by one query when a range search finds them missing
+    private static final int RANGE_DAYS = 31;
+
+    private static ScheduleIndex instance = null;
+
+    private final long ttlMs;
+    private final int maxDays;
+    private final AssignmentStrategy strategy;
+    private final Map<Date, DaySchedule> days = new ConcurrentHashMap<>();
+    // the day dates before today were last dropped
+    private volatile LocalDate sweptOn;
+
+    // caregiver names interned to small ints so a day is just two bitsets
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    private final AvailabilityRepository availabilities = new AvailabilityRepository();
+
+    private ScheduleIndex(long ttlMs, int maxDays, AssignmentStrategy strategy) {
+        this.ttlMs = ttlMs;
+        this.maxDays = maxDays;
+        this.strategy = strategy;
+    }
+
+    public static synchronized ScheduleIndex getInstance() {
+        if (instance == null) {
+            long ttlMs = Settings.getInt(TTL_ENV, 60_000);
+            AssignmentStrategy strategy = null;
+            String value = Settings.get(STRATEGY_ENV, null);
+            if (value != null) {
+                strategy = AssignmentStrategy.named(value);
+                if (strategy == null) {
+                    Settings.invalid(STRATEGY_ENV, value);
+                }
+            }
+            int maxDays = Settings.getInt(MAX_DAYS_ENV, 400, 1, Integer.MAX_VALUE);
+            instance = new ScheduleIndex(ttlMs, maxDays, strategy == null ? new LeastBookedStrategy() : strategy);
+        }
+        return instance;
+    }
+
+    /**
+     * The caregivers who have a free slot on the date, in name order.
+     */
+    public List<String> freeCaregivers(Date d) throws SQLException {
+        return freeCaregivers(day(d));
+    }
+
+    private List<String> freeCaregivers(DaySchedule day) {
+        List<String> result = new ArrayList<>();
+        synchronized (day) {
+            for (int id = day.free.nextSetBit(0); id >= 0; id = day.free.nextSetBit(id + 1)) {
+                result.add(name(id));
+            }
+        }
+        result.sort(null);
+        return result;
+    }
+
+    /**
+     * The caregivers whose slot containing the minute is free on the date, in name order.
+     */
+    public List<String> freeCaregivers(Date d, int minute) throws SQLException {
+        DaySchedule day = day(d);
+        List<String> result = new ArrayList<>();
+        synchronized (day) {
+            for (int id = day.free.nextSetBit(0); id >= 0; id = day.free.nextSetBit(id + 1)) {
+                if (day.shifts.get(id).isFree(minute)) {
+                    result.add(name(id));
+                }
+            }
+        }
+        result.sort(null);
+        return result;
+    }
+
+    /**
+     * The start minutes of every free slot on the date, by caregiver in name order.
+     */
+    public Map<String, List<Integer>> freeSlots(Date d) throws SQLException {
+        DaySchedule day = day(d);
+        Map<String, List<Integer>> result = new TreeMap<>();
+        synchronized (day) {
+            for (int id = day.free.nextSetBit(0); id >= 0; id = day.free.nextSetBit(id + 1)) {
+                result.put(name(id), day.shifts.get(id).freeMinutes());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The first limit dates from from to to, inclusive, on which some caregiver has a free slot,
+     * each with those caregivers in name order. Dates that are not in memory are read RANGE_DAYS
+     * at a time, and reading stops once limit dates were found.
+     */
+    public Map<Date, List<String>> freeCaregivers(Date from, Date to, int limit) throws SQLException {
+        Map<Date, List<String>> result = new LinkedHashMap<>();
+        // the dates read by the last range query, in case they are evicted before they are used
+        Map<Date, DaySchedule> loaded = Map.of();
+        LocalDate last = to.toLocalDate();
+        for (LocalDate d = from.toLocalDate(); !d.isAfter(last) && result.size() < limit; d = d.plusDays(1)) {
+            Date date = Date.valueOf(d);
+            DaySchedule day = loaded.get(date);
+            if (day == null && !isFresh(date)) {
+                LocalDate end = d.plusDays(RANGE_DAYS - 1);
+                loaded = loadRange(d, end.isAfter(last) ? last : end);
+                day = loaded.get(date);
+            }
+            List<String> free = freeCaregivers(day != null ? day : day(date));
+            if (!free.isEmpty()) {
+                result.put(date, free);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the dates from from to to, inclusive, that are missing or stale, RANGE_DAYS dates
+     * per query, so that claims on many of them do not each query their own date.
+     */
+    public void preload(Date from, Date to) throws SQLException {
+        LocalDate last = to.toLocalDate();
+        for (LocalDate d = from.toLocalDate(); !d.isAfter(last); d = d.plusDays(RANGE_DAYS)) {
+            LocalDate end = d.plusDays(RANGE_DAYS - 1).isAfter(last) ? last : d.plusDays(RANGE_DAYS - 1);
+            for (LocalDate day = d; !day.isAfter(end); day = day.plusDays(1)) {
+                if (!isFresh(Date.valueOf(day))) {
+                    loadRange(day, end);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the date can be answered without a query.
+     */
+    public boolean isFresh(Date d) {
+        DaySchedule day = days.get(d);
+        return day != null && System.currentTimeMillis() - day.loadedAt <= ttlMs;
+    }
+
+    /**
+     * Loads the date and looks up the patient's preferred caregiver ahead of claim(), so that
+     * it can overlap with other lookups.
+     */
+    public void prefetch(Date d, String patient) throws SQLException {
+        day(d);
+        strategy.preferred(patient, d);
+    }
+
+    public int countFree(Date d) throws SQLException {
+        DaySchedule day = day(d);
+        synchronized (day) {
+            return day.free.cardinality();
+        }
+    }
+
+    /**
+     * Picks a free slot on the date, from the caregiver the assignment strategy ranks first for
+     * the patient, and marks it booked so no other reservation in this process picks it too.
+     * With a minute, only a caregiver whose slot containing that minute is free will do; without
+     * one, the caregiver's earliest free slot is taken. Returns null if nothing is free. The pick
+     * must be confirmed with assigned() or given back with release().
+     */
+    public Claim claim(Date d, String patient, Integer minute) throws SQLException {
+        DaySchedule day = day(d);
+        String preferred = strategy.preferred(patient, d);
+        synchronized (day) {
+            Integer id = preferred == null ? null : ids.get(preferred);
+            if (id == null || !day.free.get(id) || (minute != null && !day.shifts.get(id).isFree(minute))) {
+                id = first(day, minute);
+                if (id == null) {
+                    return null;
+                }
+            }
+            Shifts shifts = day.shifts.get(id);
+            int start = shifts.book(minute == null ? shifts.firstFree() : minute);
+            if (shifts.firstFree() < 0) {
+                clearFree(day, id);
+            }
+            return new Claim(name(id), start);
+        }
+    }
+
+    /**
+     * Confirms a claim: the caregiver is now booked for the patient on the date.
+     */
+    public void assigned(Date d, String caregiver, String patient) {
+        strategy.assigned(caregiver, patient, d);
+    }
+
+    /**
+     * Frees the slot after the patient's appointment in it was cancelled.
+     */
+    public void cancelled(Date d, String caregiver, int minute, String patient) {
+        strategy.cancelled(caregiver, patient, d);
+        markFree(d, caregiver, minute);
+        DaySchedule day = days.get(d);
+        Integer id = ids.get(caregiver);
+        if (day != null && id != null) {
+            synchronized (day) {
+                if (day.queued.containsKey(id)) {
+                    setFree(day, id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Undoes a claim whose reservation did not go through.
+     */
+    public void release(Date d, Claim claim) {
+        markFree(d, claim.getCaregiverName(), claim.getMinute());
+    }
+
+    public void markAvailable(Date d, String caregiver, int startMinute, int endMinute) {
+        DaySchedule day = days.get(d);
+        if (day == null) {
+            return; // loaded from the database when first needed
+        }
+        int id = intern(caregiver);
+        synchronized (day) {
+            // like the database, a shift overlapping one the caregiver already has is skipped
+            Shifts shifts = day.shifts.computeIfAbsent(id, k -> new Shifts());
+            if (shifts.add(new Shift(startMinute, endMinute))) {
+                day.available.set(id);
+                if (Slots.count(startMinute, endMinute) > 0) {
+                    setFree(day, id);
+                }
+            }
+        }
+    }
+
+    public void markBooked(Date d, String caregiver, int minute) {
+        DaySchedule day = days.get(d);
+        if (day == null) {
+            return;
+        }
+        int id = intern(caregiver);
+        synchronized (day) {
+            Shifts shifts = day.shifts.get(id);
+            if (shifts != null && shifts.book(minute) >= 0 && shifts.firstFree() < 0) {
+                clearFree(day, id);
+            }
+        }
+    }
+
+    public void markFree(Date d, String caregiver, int minute) {
+        DaySchedule day = days.get(d);
+        if (day == null) {
+            return;
+        }
+        int id = intern(caregiver);
+        synchronized (day) {
+            Shifts shifts = day.shifts.get(id);
+            if (shifts != null && shifts.free(minute) && !day.free.get(id)) {
+                setFree(day, id);
+            }
+        }
+    }
+
+    /**
+     * Drops a date so that it is read from the database again the next time it is needed.
+     */
+    public void invalidate(Date d) {
+        days.remove(d);
+    }
+
+    private DaySchedule day(Date d) throws SQLException {
+        DaySchedule day = days.get(d);
+        if (day != null && System.currentTimeMillis() - day.loadedAt <= ttlMs) {
+            return day;
+        }
+        DaySchedule loaded = load(d);
+        put(d, loaded);
+        return loaded;
+    }
+
+    private void put(Date d, DaySchedule day) {
+        days.put(d, day);
+        LocalDate today = LocalDate.now();
+        if (!today.equals(sweptOn) || days.size() > maxDays) {
+            evict(today);
+        }
+    }
+
+    // drops the dates before today and, above maxDays, the dates loaded longest ago; a dropped
+    // date is read from the database again when next needed
+    private synchronized void evict(LocalDate today) {
+        sweptOn = today;
+        Date first = Date.valueOf(today);
+        days.keySet().removeIf(d -> d.before(first));
+        if (days.size() > maxDays) {
+            List<DaySchedule> loaded = new ArrayList<>(days.values());
+            loaded.sort(Comparator.comparingLong(day -> day.loadedAt));
+            // a quarter below the cap, so the sort is not repeated for every new date
+            int excess = loaded.size() - maxDays * 3 / 4;
+            for (int i = 0; i < excess; i++) {
+                days.remove(loaded.get(i).date, loaded.get(i));
+            }
+        }
+    }
+
+    private DaySchedule load(Date d) throws SQLException {
+        strategy.prepare(d);
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        List<Availability> rows;
+        try {
+            rows = availabilities.findDay(con, d);
+        } finally {
+            cm.closeConnection();
+        }
+        return build(d, rows);
+    }
+
+    // loads the dates from from to to that are missing or stale with one query, and returns them
+    private Map<Date, DaySchedule> loadRange(LocalDate from, LocalDate to) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        List<Availability> rows;
+        try {
+            rows = availabilities.findRange(con, Date.valueOf(from), Date.valueOf(to));
+        } finally {
+            cm.closeConnection();
+        }
+        Map<Date, List<Availability>> byDate = new HashMap<>();
+        for (Availability row : rows) {
+            byDate.computeIfAbsent(row.getTime(), k -> new ArrayList<>()).add(row);
+        }
+        Map<Date, DaySchedule> loaded = new HashMap<>();
+        for (LocalDate d = from; !d.isAfter(to); d = d.plusDays(1)) {
+            Date date = Date.valueOf(d);
+            // dates already in memory may have claims this process made since the query ran
+            if (!isFresh(date)) {
+                strategy.prepare(date);
+                DaySchedule day = build(date, byDate.getOrDefault(date, List.of()));
+                loaded.put(date, day);
+                put(date, day);
+            }
+        }
+        return loaded;
+    }
+
+    private DaySchedule build(Date d, List<Availability> rows) {
+        DaySchedule day = new DaySchedule(d);
+        synchronized (day) {
+            for (Availability row : rows) {
+                int id = intern(row.getCaregiverName());
+                Shift shift = new Shift(row.getStartMinute(), row.getEndMinute());
+                for (int minute : row.getBookedMinutes()) {
+                    int slot = shift.slotAt(minute);
+                    if (slot >= 0) {
+                        shift.booked.set(slot);
+                    }
+                }
+                day.available.set(id);
+                day.shifts.computeIfAbsent(id, k -> new Shifts()).add(shift);
+                if (shift.nextFree(0) >= 0 && !day.free.get(id)) {
+                    setFree(day, id);
+                }
+            }
+        }
+        return day;
+    }
+
+    // the caller holds the day's lock
+    private void setFree(DaySchedule day, int id) {
+        day.free.set(id);
+        Queued queued = new Queued(strategy.rank(name(id), day.date), id);
+        Queued old = day.queued.put(id, queued);
+        if (old != null) {
+            day.queue.remove(old);
+        }
+        day.queue.add(queued);
+    }
+
+    // the caller holds the day's lock
+    private void clearFree(DaySchedule day, int id) {
+        day.free.clear(id);
+        Queued queued = day.queued.remove(id);
+        if (queued != null) {
+            day.queue.remove(queued);
+        }
+    }
+
+    // the first queued caregiver free at the minute (any minute if null). Ranks are checked
+    // lazily: an entry queued under a rank that has since changed is re-queued at its current
+    // rank and the search starts over, at most once per entry
+    private Integer first(DaySchedule day, Integer minute) {
+        int refreshed = 0;
+        while (true) {
+            Queued match = null;
+            for (Queued queued : day.queue) {
+                if (minute == null || day.shifts.get(queued.id).isFree(minute)) {
+                    match = queued;
+                    break;
+                }
+            }
+            if (match == null) {
+                return null;
+            }
+            if (refreshed < day.queue.size() && match.rank != strategy.rank(name(match.id), day.date)) {
+                setFree(day, match.id);
+                refreshed++;
+                continue;
+            }
+            return match.id;
+        }
+    }
+
+    private int intern(String caregiver) {
+        Integer id = ids.get(caregiver);
+        if (id != null) {
+            return id;
+        }
+        synchronized (names) {
+            return ids.computeIfAbsent(caregiver, k -> {
+                names.add(k);
+                return names.size() - 1;
+            });
+        }
+    }
+
+    private String name(int id) {
+        synchronized (names) {
+            return names.get(id);
+        }
+    }
+
+    /**
+     * A slot handed out by claim(): the caregiver and the minute the slot starts.
+     */
+    public static class Claim {
+        private final String caregiverName;
+        private final int minute;
+
+        Claim(String caregiverName, int minute) {
+            this.caregiverName = caregiverName;
+            this.minute = minute;
+        }
+
+        public String getCaregiverName() {
+            return caregiverName;
+        }
+
+        public int getMinute() {
+            return minute;
+        }
+    }
+
+    private static class DaySchedule {
+        private final Date date;
+        private final long loadedAt = System.currentTimeMillis();
+        private final BitSet available = new BitSet();
+        // caregivers with at least one free slot
+        private final BitSet free = new BitSet();
+        private final Map<Integer, Shifts> shifts = new HashMap<>();
+        // the free caregivers by rank, and each one's entry in it
+        private final TreeSet<Queued> queue = new TreeSet<>();
+        private final Map<Integer, Queued> queued = new HashMap<>();
+
+        DaySchedule(Date date) {
+            this.date = date;
+        }
+    }
+
+    /**
+     * One caregiver's shift on a date and which of its slots are booked.
+     */
+    private static class Shift {
+        private final int start;
+        private final int end;
+        private final int slots;
+        private final BitSet booked;
+
+        Shift(int start, int end) {
+            this.start = start;
+            this.end = end;
+            this.slots = Slots.count(start, end);
+            this.booked = new BitSet(slots);
+        }
+
+        int slotAt(int minute) {
+            return Slots.slotAt(start, end, minute);
+        }
+
+        boolean isFree(int minute) {
+            int slot = slotAt(minute);
+            return slot >= 0 && !booked.get(slot);
+        }
+
+        // the first free slot at or after from, or -1
+        int nextFree(int from) {
+            int slot = booked.nextClearBit(from);
+            return slot < slots ? slot : -1;
+        }
+    }
+
+    /**
+     * A caregiver's shifts on a date, which do not overlap, ordered by start.
+     */
+    private static class Shifts {
+        private final List<Shift> shifts = new ArrayList<>(1);
+
+        // adds the shift unless it overlaps one already there
+        boolean add(Shift shift) {
+            int i = 0;
+            while (i < shifts.size() && shifts.get(i).start < shift.start) {
+                i++;
+            }
+            if ((i > 0 && shifts.get(i - 1).end > shift.start) || (i < shifts.size() && shifts.get(i).start < shift.end)) {
+                return false;
+            }
+            shifts.add(i, shift);
+            return true;
+        }
+
+        boolean isFree(int minute) {
+            for (Shift shift : shifts) {
+                if (shift.slotAt(minute) >= 0) {
+                    return shift.isFree(minute);
+                }
+            }
+            return false;
+        }
+
+        // books the slot containing the minute and returns the minute it starts, or -1 if no
+        // shift has such a slot
+        int book(int minute) {
+            for (Shift shift : shifts) {
+                int slot = shift.slotAt(minute);
+                if (slot >= 0) {
+                    shift.booked.set(slot);
+                    return Slots.startOf(shift.start, slot);
+                }
+            }
+            return -1;
+        }
+
+        // frees the slot containing the minute; false if no shift has such a slot
+        boolean free(int minute) {
+            for (Shift shift : shifts) {
+                int slot = shift.slotAt(minute);
+                if (slot >= 0) {
+                    shift.booked.clear(slot);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // the minute the earliest free slot starts, or -1
+        int firstFree() {
+            for (Shift shift : shifts) {
+                int slot = shift.nextFree(0);
+                if (slot >= 0) {
+                    return Slots.startOf(shift.start, slot);
+                }
+            }
+            return -1;
+        }
+
+        List<Integer> freeMinutes() {
+            List<Integer> minutes = new ArrayList<>();
+            for (Shift shift : shifts) {
+                for (int slot = shift.nextFree(0); slot >= 0; slot = shift.nextFree(slot + 1)) {
+                    minutes.add(Slots.startOf(shift.start, slot));
+                }
+            }
+            return minutes;
+        }
+    }
+
+    /**
+     * A free caregiver in a date's queue, ordered by rank and then id.
+     */
+    private static class Queued implements Comparable<Queued> {
+        private final long rank;
+        private final int id;
+
+        Queued(long rank, int id) {
+            this.rank = rank;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Queued other) {
+            int c = Long.compare(rank, other.rank);
+            return c != 0 ? c : Integer.compare(id, other.id);
+        }
+    }
+}
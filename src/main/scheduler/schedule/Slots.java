@@ -0,0 +1,71 @@
+package scheduler.schedule;
+
+import scheduler.db.Settings;
+import scheduler.util.TimeSpec;
+
+/**
+ * How a caregiver's shift on a date is divided into appointments.
+ *
+ * With SlotMinutes set (e.g. 15), a shift holds one appointment per slot of that length,
+ * starting at the beginning of the shift; a trailing part shorter than a slot is not used. With
+ * SlotMinutes unset or 0 a shift is one slot, so a caregiver takes one appointment per shift.
+ * Appointments store the minute their slot starts, so changing the setting only changes how
+ * the remaining free time is divided.
+ */
+public class Slots {
+
+    private static final String SLOT_MINUTES_ENV = "SlotMinutes";
+
+    private static final int slotMinutes = readSlotMinutes();
+
+    private Slots() {
+    }
+
+    public static boolean isEnabled() {
+        return slotMinutes > 0;
+    }
+
+    public static int getSlotMinutes() {
+        return slotMinutes;
+    }
+
+    /**
+     * The minutes one slot covers: SlotMinutes, or a whole day when a shift is one slot.
+     */
+    public static int length() {
+        return slotMinutes > 0 ? slotMinutes : TimeSpec.MINUTES_PER_DAY;
+    }
+
+    /**
+     * The number of slots in the shift.
+     */
+    public static int count(int start, int end) {
+        if (end <= start) {
+            return 0;
+        }
+        return slotMinutes > 0 ? (end - start) / slotMinutes : 1;
+    }
+
+    /**
+     * The minute the slot of a shift starting at start begins.
+     */
+    public static int startOf(int start, int slot) {
+        return start + slot * slotMinutes;
+    }
+
+    /**
+     * The slot of a shift starting at start that contains the minute, or -1 if it is not in
+     * one of the shift's slots.
+     */
+    public static int slotAt(int start, int end, int minute) {
+        if (minute < start || minute >= end) {
+            return -1;
+        }
+        int slot = slotMinutes > 0 ? (minute - start) / slotMinutes : 0;
+        return slot < count(start, end) ? slot : -1;
+    }
+
+    private static int readSlotMinutes() {
+        return Settings.getInt(SLOT_MINUTES_ENV, 0, 0, TimeSpec.MINUTES_PER_DAY);
+    }
+}
@@ -0,0 +1,53 @@
+package scheduler.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A minimal terminal for SchedulerServer: sends each line typed on stdin and prints
+ * whatever the server answers.
+ *
+ * Usage: SchedulerClient [host] [port]
+ */
+public class SchedulerClient {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 5555;
+
+        try (Socket socket = new Socket(host, port)) {
+            Thread printer = new Thread(() -> copyToConsole(socket), "scheduler-client-printer");
+            printer.start();
+
+            PrintStream toServer = new PrintStream(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+            BufferedReader console = new BufferedReader(new InputStreamReader(System.in));
+            String line;
+            while (printer.isAlive() && (line = console.readLine()) != null) {
+                toServer.println(line);
+            }
+            if (!socket.isClosed()) {
+                socket.shutdownOutput();
+            }
+            printer.join();
+        }
+    }
+
+    private static void copyToConsole(Socket socket) {
+        try {
+            Reader in = new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
+            char[] buffer = new char[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                System.out.print(new String(buffer, 0, n));
+                System.out.flush();
+            }
+        } catch (IOException e) {
+            // the server closed the connection
+        }
+    }
+}
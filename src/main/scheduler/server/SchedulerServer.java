@@ -0,0 +1,223 @@
+package scheduler.server;
+
+import scheduler.Scheduler;
+import scheduler.account.UsernameFilter;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the scheduler's command protocol to many terminals over TCP.
+ *
+ * Every client connection gets its own Scheduler, so login state is kept per session, and
+ * runs on its own virtual thread when the JVM supports them (a cached platform thread pool
+ * otherwise). Clients send one command per line and read the same text the console prints.
+ *
+ * Usage: SchedulerServer [port] [maxSessions]
+ */
+public class SchedulerServer {
+
+    private static final int DEFAULT_PORT = 5555;
+    private static final int DEFAULT_MAX_SESSIONS = 1000;
+    private static final long SHUTDOWN_GRACE_MS = 10_000;
+
+    private final int port;
+    private final int maxSessions;
+    private final Semaphore sessionPermits;
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    private final ExecutorService sessions;
+
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+    private volatile boolean running = false;
+
+    public SchedulerServer(int port, int maxSessions) {
+        this.port = port;
+        this.maxSessions = Math.max(1, maxSessions);
+        this.sessionPermits = new Semaphore(this.maxSessions);
+        this.sessions = newSessionExecutor();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int maxSessions = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_SESSIONS;
+
+        SchedulerServer server = new SchedulerServer(port, maxSessions);
+        UsernameFilter.preload();
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.shutdown(SHUTDOWN_GRACE_MS);
+            Scheduler.shutdown();
+        }));
+        System.out.println("Scheduler server listening on port " + server.getPort()
+                + " (at most " + maxSessions + " sessions)");
+        server.awaitStop();
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        serverSocket = new ServerSocket(port);
+        running = true;
+        acceptor = new Thread(this::acceptLoop, "scheduler-server-acceptor");
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getActiveSessions() {
+        return maxSessions - sessionPermits.availablePermits();
+    }
+
+    public void awaitStop() throws InterruptedException {
+        acceptor.join();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (running) {
+                    System.out.println("Error occurred when accepting a client");
+                    e.printStackTrace();
+                }
+                continue;
+            }
+            if (!sessionPermits.tryAcquire()) {
+                reject(socket);
+                continue;
+            }
+            clients.add(socket);
+            try {
+                sessions.execute(() -> runSession(socket));
+            } catch (RuntimeException e) {
+                // the executor is shutting down
+                clients.remove(socket);
+                sessionPermits.release();
+                reject(socket);
+            }
+        }
+    }
+
+    private void reject(Socket socket) {
+        try (Socket s = socket) {
+            PrintStream out = new PrintStream(s.getOutputStream(), true, StandardCharsets.UTF_8);
+            out.println("The server is busy, please try again later!");
+        } catch (IOException e) {
+            // the client is gone already
+        }
+    }
+
+    private void runSession(Socket socket) {
+        try (Socket s = socket) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            PrintStream out = new PrintStream(new BufferedOutputStream(s.getOutputStream()), false, StandardCharsets.UTF_8);
+            Scheduler scheduler = new Scheduler(out);
+            scheduler.printWelcome();
+            while (true) {
+                out.print("> ");
+                out.flush();
+                String line = in.readLine();
+                if (line == null || !execute(scheduler, line, out)) {
+                    break;
+                }
+            }
+            out.flush();
+        } catch (SocketException e) {
+            // the client disconnected or the server is stopping
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            clients.remove(socket);
+            sessionPermits.release();
+        }
+    }
+
+    // returns false once the client has quit; a command that throws fails on its own, like in
+    // batch mode, and the session stays open
+    private static boolean execute(Scheduler scheduler, String line, PrintStream out) {
+        try {
+            return scheduler.execute(line);
+        } catch (RuntimeException e) {
+            String[] tokens = line.trim().split(" ");
+            out.println("Error occurred when running " + tokens[0]);
+            e.printStackTrace();
+            return true;
+        }
+    }
+
+    /**
+     * Stops accepting clients and lets every session finish the command it is running. Sessions
+     * still open after the grace period are disconnected.
+     */
+    public void shutdown(long graceMs) {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+        }
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // we are closing anyway
+        }
+        // an idle session sees end of input and ends; a busy one ends after its current command
+        for (Socket socket : clients) {
+            try {
+                socket.shutdownInput();
+            } catch (IOException e) {
+                // the client is gone already
+            }
+        }
+        sessions.shutdown();
+        try {
+            if (!sessions.awaitTermination(graceMs, TimeUnit.MILLISECONDS)) {
+                for (Socket socket : clients) {
+                    try {
+                        socket.close();
+                    } catch (IOException e) {
+                        // the client is gone already
+                    }
+                }
+                sessions.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sessions.shutdownNow();
+        }
+    }
+
+    // one virtual thread per session on JDKs that have them, plain threads otherwise
+    private static ExecutorService newSessionExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "scheduler-session");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package scheduler.util;
+
+import java.sql.Date;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Parses the date arguments accepted by upload_availability.
+ *
+ * A spec is a comma separated list of dates (2022-05-01) and inclusive ranges
+ * (2022-05-01..2022-05-31). An optional weekday pattern such as MON,WED,FRI keeps only the
+ * dates that fall on those days. Invalid input throws IllegalArgumentException, like
+ * Date.valueOf does.
+ */
+public class DateSpec {
+
+    // upper bound on the number of dates a single spec may expand to
+    public static final int MAX_DATES = 366;
+
+    public static List<Date> parse(String spec) {
+        return parse(spec, null);
+    }
+
+    public static List<Date> parse(String spec, String weekdays) {
+        Set<DayOfWeek> days = weekdays == null ? EnumSet.allOf(DayOfWeek.class) : parseWeekdays(weekdays);
+        // keeps the order the user gave and drops duplicates
+        Set<LocalDate> dates = new LinkedHashSet<>();
+        for (String item : spec.split(",")) {
+            item = item.trim();
+            int dots = item.indexOf("..");
+            LocalDate from;
+            LocalDate to;
+            if (dots < 0) {
+                from = Date.valueOf(item).toLocalDate();
+                to = from;
+            } else {
+                from = Date.valueOf(item.substring(0, dots)).toLocalDate();
+                to = Date.valueOf(item.substring(dots + 2)).toLocalDate();
+                if (to.isBefore(from)) {
+                    throw new IllegalArgumentException("Range ends before it starts: " + item);
+                }
+            }
+            for (LocalDate d = from; !d.isAfter(to); d = d.plusDays(1)) {
+                if (days.contains(d.getDayOfWeek())) {
+                    dates.add(d);
+                    if (dates.size() > MAX_DATES) {
+                        throw new IllegalArgumentException("At most " + MAX_DATES + " dates can be given at once");
+                    }
+                }
+            }
+        }
+        List<Date> result = new ArrayList<>(dates.size());
+        for (LocalDate d : dates) {
+            result.add(Date.valueOf(d));
+        }
+        return result;
+    }
+
+    // accepts MON,TUE,... (or full day names), in any case
+    private static Set<DayOfWeek> parseWeekdays(String weekdays) {
+        Set<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+        for (String name : weekdays.split(",")) {
+            String upper = name.trim().toUpperCase(Locale.ROOT);
+            DayOfWeek match = null;
+            for (DayOfWeek day : DayOfWeek.values()) {
+                if (upper.length() >= 3 && day.name().startsWith(upper)) {
+                    match = day;
+                }
+            }
+            if (match == null) {
+                throw new IllegalArgumentException("Unknown weekday: " + name);
+            }
+            days.add(match);
+        }
+        return days;
+    }
+}
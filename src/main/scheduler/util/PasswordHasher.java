@@ -0,0 +1,250 @@
+package scheduler.util;
+
+import scheduler.db.Settings;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Hashes and verifies passwords on a dedicated, bounded pool of threads.
+ *
+ * Hashing is CPU bound, so running it on at most one thread per core keeps a burst of logins
+ * from starving other commands. Each hashing thread keeps its own SecretKeyFactory and
+ * SecureRandom instead of looking them up for every password.
+ *
+ * The parameters a hash was made with are stored next to it as a string such as
+ * "PBKDF2WithHmacSHA256:10000:128" (algorithm, iterations, key length in bits). New hashes use
+ * the current parameters, configurable through the HashAlgorithm and HashIterations
+ * settings; a login that matches an older hash can be rehashed with them. Rehashes run on one
+ * low-priority thread of their own, at most once at a time per account, so a burst of logins
+ * after the parameters change does not double the work of the login pool.
+ */
+public class PasswordHasher {
+
+    // what accounts created before hash parameters were stored were hashed with
+    public static final HashParams LEGACY = new HashParams("PBKDF2WithHmacSHA1", 10, 16);
+
+    // the Hash columns are BINARY(16)
+    private static final int KEY_LENGTH = 128;
+    private static final int SALT_LENGTH = 16;
+    private static final int QUEUE_CAPACITY = 10_000;
+    // rehashes beyond this are dropped; the account is rehashed on a later login instead
+    private static final int REHASH_QUEUE_CAPACITY = 1_000;
+    private static final String DEFAULT_ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int DEFAULT_ITERATIONS = 10_000;
+
+    private static PasswordHasher instance = null;
+
+    private final HashParams current;
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor rehasher;
+    // the accounts with a rehash queued or running
+    private final Set<String> rehashing = ConcurrentHashMap.newKeySet();
+
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+    private static final ThreadLocal<Map<String, SecretKeyFactory>> FACTORIES = ThreadLocal.withInitial(HashMap::new);
+
+    private PasswordHasher(HashParams current, int threads) {
+        this.current = current;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(r, "password-hasher");
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        this.rehasher = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(REHASH_QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(r, "password-rehasher");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                });
+        this.rehasher.allowCoreThreadTimeOut(true);
+    }
+
+    public static synchronized PasswordHasher getInstance() {
+        if (instance == null) {
+            String algorithm = Settings.get("HashAlgorithm", DEFAULT_ALGORITHM);
+            try {
+                SecretKeyFactory.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                Settings.invalid("HashAlgorithm", algorithm);
+                algorithm = DEFAULT_ALGORITHM;
+            }
+            int iterations = Settings.getInt("HashIterations", DEFAULT_ITERATIONS, 1, Integer.MAX_VALUE);
+            instance = new PasswordHasher(new HashParams(algorithm, iterations, KEY_LENGTH),
+                    Runtime.getRuntime().availableProcessors());
+        }
+        return instance;
+    }
+
+    public HashParams getCurrentParams() {
+        return current;
+    }
+
+    public byte[] generateSalt() {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.get().nextBytes(salt);
+        return salt;
+    }
+
+    public CompletableFuture<byte[]> hashAsync(String password, byte[] salt, HashParams params) {
+        return CompletableFuture.supplyAsync(() -> compute(password, salt, params), executor);
+    }
+
+    /**
+     * Hashes on the hashing pool and waits for the result.
+     */
+    public byte[] hash(String password, byte[] salt, HashParams params) {
+        return join(hashAsync(password, salt, params));
+    }
+
+    /**
+     * Checks a password against a stored hash made with the given parameters.
+     */
+    public boolean verify(String password, byte[] salt, byte[] storedHash, HashParams params) {
+        byte[] calculated = hash(password, salt, params);
+        // the stored hash comes back padded with zeros to the column width
+        return Arrays.equals(Util.trim(storedHash), Util.trim(calculated));
+    }
+
+    /**
+     * Hashes the password again with a fresh salt and the current parameters on the rehashing
+     * thread, then hands the salt and hash to store. Returns immediately. Does nothing if the
+     * account, e.g. "Patients:alice", already has a rehash queued or the queue is full.
+     */
+    public void rehashInBackground(String account, String password, BiConsumer<byte[], byte[]> store) {
+        if (!rehashing.add(account)) {
+            return;
+        }
+        try {
+            rehasher.execute(() -> {
+                try {
+                    byte[] salt = generateSalt();
+                    store.accept(salt, compute(password, salt, current));
+                } finally {
+                    rehashing.remove(account);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rehashing.remove(account);
+        }
+    }
+
+    private static byte[] compute(String password, byte[] salt, HashParams params) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, params.getIterations(), params.getKeyLength());
+        try {
+            Map<String, SecretKeyFactory> factories = FACTORIES.get();
+            SecretKeyFactory factory = factories.get(params.getAlgorithm());
+            if (factory == null) {
+                factory = SecretKeyFactory.getInstance(params.getAlgorithm());
+                factories.put(params.getAlgorithm(), factory);
+            }
+            return factory.generateSecret(spec).getEncoded();
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException ex) {
+            throw new IllegalStateException(ex);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static byte[] join(CompletableFuture<byte[]> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The algorithm, iteration count and key length a hash was made with.
+     */
+    public static class HashParams {
+        private final String algorithm;
+        private final int iterations;
+        private final int keyLength;
+
+        public HashParams(String algorithm, int iterations, int keyLength) {
+            this.algorithm = algorithm;
+            this.iterations = iterations;
+            this.keyLength = keyLength;
+        }
+
+        /**
+         * Parses the stored form; null means the account predates stored parameters. Throws
+         * IllegalArgumentException if the value is not in that form.
+         */
+        public static HashParams parse(String value) {
+            if (value == null || value.isEmpty()) {
+                return LEGACY;
+            }
+            String[] parts = value.split(":");
+            if (parts.length == 3) {
+                try {
+                    int iterations = Integer.parseInt(parts[1]);
+                    int keyLength = Integer.parseInt(parts[2]);
+                    if (iterations > 0 && keyLength > 0) {
+                        return new HashParams(parts[0], iterations, keyLength);
+                    }
+                } catch (NumberFormatException e) {
+                    // reported below
+                }
+            }
+            throw new IllegalArgumentException("Invalid hash parameters: " + value);
+        }
+
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+
+        public int getKeyLength() {
+            return keyLength;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof HashParams)) {
+                return false;
+            }
+            HashParams other = (HashParams) o;
+            return iterations == other.iterations && keyLength == other.keyLength
+                    && algorithm.equals(other.algorithm);
+        }
+
+        @Override
+        public int hashCode() {
+            return (algorithm.hashCode() * 31 + iterations) * 31 + keyLength;
+        }
+
+        @Override
+        public String toString() {
+            return algorithm + ":" + iterations + ":" + keyLength;
+        }
+    }
+}
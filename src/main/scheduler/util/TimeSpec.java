@@ -0,0 +1,69 @@
+package scheduler.util;
+
+/**
+ * Parses and prints the times of day accepted by reserve, search_caregiver_schedule and
+ * upload_availability, as minutes since midnight.
+ *
+ * A time is HH:MM (09:30); a shift is two times joined by a dash (09:00-17:00), and 24:00 may
+ * end one. Invalid input throws IllegalArgumentException, like Date.valueOf does.
+ */
+public class TimeSpec {
+
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    /**
+     * Whether the argument looks like a time or shift rather than e.g. a weekday pattern.
+     */
+    public static boolean isTime(String spec) {
+        return spec.indexOf(':') >= 0;
+    }
+
+    public static int parseTime(String spec) {
+        int minute = parse(spec.trim());
+        if (minute >= MINUTES_PER_DAY) {
+            throw new IllegalArgumentException("Not a time of day: " + spec);
+        }
+        return minute;
+    }
+
+    /**
+     * Returns {start, end} in minutes since midnight, end exclusive.
+     */
+    public static int[] parseShift(String spec) {
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            throw new IllegalArgumentException("Not a shift: " + spec);
+        }
+        int start = parseTime(spec.substring(0, dash));
+        int end = parse(spec.substring(dash + 1).trim());
+        if (end <= start) {
+            throw new IllegalArgumentException("Shift ends before it starts: " + spec);
+        }
+        return new int[]{start, end};
+    }
+
+    public static String format(int minute) {
+        return String.format("%02d:%02d", minute / 60, minute % 60);
+    }
+
+    // HH:MM up to 24:00
+    private static int parse(String spec) {
+        int colon = spec.indexOf(':');
+        if (colon < 1 || spec.length() - colon != 3) {
+            throw new IllegalArgumentException("Not a time: " + spec);
+        }
+        int hours;
+        int minutes;
+        try {
+            hours = Integer.parseInt(spec.substring(0, colon));
+            minutes = Integer.parseInt(spec.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a time: " + spec);
+        }
+        int minute = hours * 60 + minutes;
+        if (hours < 0 || minutes < 0 || minutes > 59 || minute > MINUTES_PER_DAY) {
+            throw new IllegalArgumentException("Not a time: " + spec);
+        }
+        return minute;
+    }
+}
@@ -0,0 +1,60 @@
+package scheduler;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+/**
+ * JDBC stand-ins for tests that need to control what a driver reports.
+ *
+ * A stub answers the methods named in its answers map and returns null, zero or false from
+ * every other method, so a test only spells out the calls it cares about.
+ */
+public final class Stubs {
+
+    /**
+     * The answer to one call, given its arguments.
+     */
+    @FunctionalInterface
+    public interface Answer {
+        Object answer(Object[] args) throws Exception;
+    }
+
+    private Stubs() {
+    }
+
+    public static <T> T stub(Class<T> type, Map<String, Answer> answers) {
+        Object stub = Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    Answer answer = answers.get(method.getName());
+                    if (answer != null) {
+                        return answer.answer(args == null ? new Object[0] : args);
+                    }
+                    if (method.getName().equals("equals")) {
+                        return proxy == args[0];
+                    }
+                    if (method.getName().equals("hashCode")) {
+                        return System.identityHashCode(proxy);
+                    }
+                    return defaultValue(method);
+                });
+        return type.cast(stub);
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type.isPrimitive() && type != void.class) {
+            throw new UnsupportedOperationException("No default for " + method);
+        }
+        return null;
+    }
+}
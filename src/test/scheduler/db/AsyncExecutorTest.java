@@ -0,0 +1,70 @@
+package scheduler.db;
+
+import org.junit.jupiter.api.Test;
+import scheduler.Stubs;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncExecutorTest {
+
+    @Test
+    void awaitAllCancelsTheOthersWhenOneFails() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        // stands in for a query that runs until the database is told to stop
+        Statement running = Stubs.stub(Statement.class, Map.of("cancel", args -> {
+            cancelled.countDown();
+            return null;
+        }));
+        CompletableFuture<String> slow = AsyncExecutor.supply(() -> {
+            AsyncExecutor.track(running);
+            started.countDown();
+            try {
+                if (!cancelled.await(10, TimeUnit.SECONDS)) {
+                    return "finished";
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new SQLException("Query was cancelled");
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        SQLException failure = new SQLException("Lookup failed");
+        CompletableFuture<String> failing = AsyncExecutor.supply(() -> {
+            throw failure;
+        });
+
+        SQLException e = assertThrows(SQLException.class, () -> AsyncExecutor.awaitAll(slow, failing));
+
+        assertSame(failure, e);
+        assertTrue(slow.isCancelled());
+        assertTrue(cancelled.await(10, TimeUnit.SECONDS), "the running statement was not cancelled");
+    }
+
+    @Test
+    void awaitReturnsTheResult() throws Exception {
+        CompletableFuture<Integer> lookup = AsyncExecutor.supply(() -> 42);
+
+        assertEquals(42, AsyncExecutor.await(lookup));
+    }
+
+    @Test
+    void inlineLookupFailsItsFuture() {
+        SQLException failure = new SQLException("Lookup failed");
+        CompletableFuture<Integer> lookup = AsyncExecutor.supplyIf(false, () -> {
+            throw failure;
+        });
+
+        assertSame(failure, assertThrows(SQLException.class, () -> AsyncExecutor.await(lookup)));
+    }
+}
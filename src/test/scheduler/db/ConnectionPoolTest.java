@@ -0,0 +1,92 @@
+package scheduler.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionPoolTest {
+
+    private static final Map<String, String> SETTINGS = Map.of(
+            "Backend", "embedded",
+            "EmbeddedPath", "mem:pool-test",
+            "PoolMaxSize", "1",
+            "PoolMinIdle", "0",
+            "PoolBorrowTimeoutMs", "100");
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void startPool() {
+        SETTINGS.forEach(System::setProperty);
+        pool = new ConnectionPool(Backend.fromSettings());
+    }
+
+    @AfterEach
+    void stopPool() {
+        pool.shutdown();
+        SETTINGS.keySet().forEach(System::clearProperty);
+    }
+
+    @Test
+    void borrowTimesOutWhileEveryConnectionIsLent() throws Exception {
+        Connection held = pool.borrow();
+
+        SQLException e = assertThrows(SQLException.class, pool::borrow);
+        assertTrue(e.getMessage().startsWith("Timed out after 100 ms"), e.getMessage());
+        assertEquals(1, pool.getStats().getTimeouts());
+
+        held.close();
+        pool.borrow().close();
+        assertEquals(1, pool.getStats().getCreated());
+    }
+
+    @Test
+    void returnedConnectionIsReusedWithItsStatements() throws Exception {
+        Connection first = pool.borrow();
+        PreparedStatement statement = ((StatementCache) first).prepareCached("SELECT 1");
+        first.close();
+
+        Connection second = pool.borrow();
+        try {
+            assertSame(statement, ((StatementCache) second).prepareCached("SELECT 1"));
+            assertEquals(1, pool.getStats().getCreated());
+        } finally {
+            second.close();
+        }
+    }
+
+    @Test
+    void anEndedLeaseCannotUseOrReturnTheConnection() throws Exception {
+        Connection first = pool.borrow();
+        first.close();
+        Connection second = pool.borrow();
+        try {
+            assertTrue(first.isClosed());
+            assertThrows(SQLException.class, first::createStatement);
+            // closing the old handle again must not give back the new borrow's connection
+            first.close();
+            assertEquals(1, pool.getStats().getActive());
+        } finally {
+            second.close();
+        }
+        assertEquals(0, pool.getStats().getActive());
+    }
+
+    @Test
+    void borrowFailsAfterShutdown() {
+        pool.shutdown();
+
+        SQLException e = assertThrows(SQLException.class, pool::borrow);
+        assertEquals("The connection pool has been shut down", e.getMessage());
+    }
+}
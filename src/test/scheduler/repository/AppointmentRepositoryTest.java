@@ -0,0 +1,81 @@
+package scheduler.repository;
+
+import org.junit.jupiter.api.Test;
+import scheduler.Stubs;
+import scheduler.model.Appointment;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AppointmentRepositoryTest {
+
+    private static final Date DAY = Date.valueOf("2026-11-02");
+
+    private final List<Appointment> rows = List.of(
+            new Appointment(10, DAY, 540, "c1", "p1", "pfizer"),
+            new Appointment(11, DAY, 555, "c1", "p2", "pfizer"),
+            new Appointment(12, DAY, 570, "c1", "p3", "pfizer"));
+
+    @Test
+    void successNoInfoRowsAreLookedUp() throws Exception {
+        Map<Integer, Integer> range = new ConcurrentHashMap<>();
+        // 10 and 12 succeeded without a count; only 10 passed the guard
+        Connection con = connection(
+                new int[]{Statement.SUCCESS_NO_INFO, 0, Statement.SUCCESS_NO_INFO},
+                List.of(10), range);
+
+        boolean[] inserted = new AppointmentRepository().insertAllIfFree(con, rows);
+
+        assertArrayEquals(new boolean[]{true, false, false}, inserted);
+        assertEquals(Map.of(1, 10, 2, 12), range);
+    }
+
+    @Test
+    void rowCountsAreTrustedWithoutALookup() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        Connection con = Stubs.stub(Connection.class, Map.of("prepareStatement", args -> {
+            if (((String) args[0]).startsWith("SELECT")) {
+                lookups.incrementAndGet();
+            }
+            return Stubs.stub(PreparedStatement.class, Map.of("executeBatch", a -> new int[]{1, 0, 1}));
+        }));
+
+        boolean[] inserted = new AppointmentRepository().insertAllIfFree(con, rows);
+
+        assertArrayEquals(new boolean[]{true, false, true}, inserted);
+        assertEquals(0, lookups.get());
+    }
+
+    // a connection whose insert batch reports counts and whose id lookup finds ids
+    private static Connection connection(int[] counts, List<Integer> ids, Map<Integer, Integer> range) {
+        PreparedStatement insert = Stubs.stub(PreparedStatement.class, Map.of("executeBatch", args -> counts));
+        PreparedStatement select = Stubs.stub(PreparedStatement.class, Map.of(
+                "setInt", args -> range.put((Integer) args[0], (Integer) args[1]),
+                "executeQuery", args -> resultSet(ids)));
+        return Stubs.stub(Connection.class, Map.of("prepareStatement",
+                args -> ((String) args[0]).startsWith("SELECT") ? select : insert));
+    }
+
+    private static ResultSet resultSet(List<Integer> ids) {
+        Iterator<Integer> it = new ArrayList<>(ids).iterator();
+        Integer[] current = new Integer[1];
+        return Stubs.stub(ResultSet.class, Map.of(
+                "next", args -> {
+                    current[0] = it.hasNext() ? it.next() : null;
+                    return current[0] != null;
+                },
+                "getInt", args -> current[0]));
+    }
+}
@@ -0,0 +1,95 @@
+package scheduler.repository;
+
+import org.junit.jupiter.api.Test;
+import scheduler.Stubs;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RepositoryTest {
+
+    private static final String SQL = "UPDATE Things SET Seen = 1 WHERE Id = ?";
+
+    @Test
+    void executeBatchReturnsTheCountsOfEveryChunk() throws Exception {
+        AtomicInteger pending = new AtomicInteger();
+        PreparedStatement statement = Stubs.stub(PreparedStatement.class, Map.of(
+                "addBatch", args -> pending.incrementAndGet(),
+                "executeBatch", args -> ones(pending.getAndSet(0))));
+
+        int[] counts = Repository.executeBatch(connection(statement), SQL, rows(Repository.BATCH_SIZE + 3),
+                (s, row) -> s.setInt(1, row));
+
+        assertArrayEquals(ones(Repository.BATCH_SIZE + 3), counts);
+    }
+
+    @Test
+    void executeBatchReportsEveryRowWhenALaterChunkFails() {
+        AtomicInteger pending = new AtomicInteger();
+        AtomicInteger chunks = new AtomicInteger();
+        AtomicInteger clears = new AtomicInteger();
+        BatchUpdateException failure = new BatchUpdateException("duplicate", "23505", 2627,
+                new int[]{1, 1}, null);
+        PreparedStatement statement = Stubs.stub(PreparedStatement.class, Map.of(
+                "addBatch", args -> pending.incrementAndGet(),
+                "clearBatch", args -> clears.incrementAndGet(),
+                "executeBatch", args -> {
+                    int rows = pending.getAndSet(0);
+                    if (chunks.incrementAndGet() == 2) {
+                        // the driver stops at the third row of the second chunk
+                        throw failure;
+                    }
+                    return ones(rows);
+                }));
+        int rows = Repository.BATCH_SIZE + 100;
+
+        BatchUpdateException e = assertThrows(BatchUpdateException.class, () -> Repository.executeBatch(
+                connection(statement), SQL, rows(rows), (s, row) -> s.setInt(1, row)));
+
+        int[] expected = new int[rows];
+        Arrays.fill(expected, Statement.EXECUTE_FAILED);
+        Arrays.fill(expected, 0, Repository.BATCH_SIZE + 2, 1);
+        assertArrayEquals(expected, e.getUpdateCounts());
+        assertEquals("23505", e.getSQLState());
+        assertEquals(2627, e.getErrorCode());
+        assertSame(failure, e.getCause());
+        assertEquals(1, clears.get());
+    }
+
+    @Test
+    void successNoInfoCountsAsWritten() {
+        int[] counts = {1, 0, Statement.SUCCESS_NO_INFO, Statement.EXECUTE_FAILED, 3};
+
+        assertEquals(3, Repository.countWritten(counts));
+    }
+
+    static Connection connection(PreparedStatement statement) {
+        return Stubs.stub(Connection.class, Map.of("prepareStatement", args -> statement));
+    }
+
+    private static List<Integer> rows(int count) {
+        List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(i);
+        }
+        return rows;
+    }
+
+    private static int[] ones(int count) {
+        int[] counts = new int[count];
+        Arrays.fill(counts, 1);
+        return counts;
+    }
+}